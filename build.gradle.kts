@@ -12,6 +12,8 @@ dependencies {
     minecraft("com.mojang:minecraft:${project.properties["minecraft-version"]}")
     mappings(loom.officialMojangMappings())
     modImplementation("net.fabricmc:fabric-loader:${project.properties["fabric-loader-version"]}")
+    modImplementation(fabricApi.module("fabric-lifecycle-events-v1", project.properties["fabric-api-version"].toString()))
+    modImplementation(fabricApi.module("fabric-resource-loader-v0", project.properties["fabric-api-version"].toString()))
 
     compileOnly(libs.jetbrains.annotations)
 
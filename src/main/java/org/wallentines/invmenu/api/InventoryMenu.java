@@ -5,9 +5,13 @@ import net.minecraft.network.chat.Component;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.item.ItemStack;
 import org.wallentines.invmenu.impl.InventoryMenuImpl;
+import org.wallentines.invmenu.impl.OpenQueue;
 import org.wallentines.pseudonym.Message;
 import org.wallentines.pseudonym.PipelineContext;
 
+import java.util.Collection;
+import java.util.function.Function;
+
 public interface InventoryMenu {
 
     /**
@@ -32,6 +36,22 @@ public interface InventoryMenu {
      */
     void clearItem(int index);
 
+    /**
+     * Makes the item at the given index be resolved again for each viewer periodically, while the GUI has viewers.
+     * Useful for animated items or items which display live values.
+     * @param index The slot index.
+     * @param interval The number of ticks between refreshes, or 0 to stop refreshing the slot.
+     */
+    void setRefreshInterval(int index, int interval);
+
+    /**
+     * Binds the item at the given index to an observable value. Whenever the value changes, the item will be resolved
+     * again for each player currently viewing the GUI. The binding is removed when the slot is cleared.
+     * @param index The slot index.
+     * @param source The value the item depends on, or null to unbind the slot.
+     */
+    void bindSlot(int index, ObservableValue<?> source);
+
     /**
      * Gets the number of rows in the GUI.
      * @return The number of rows.
@@ -52,7 +72,7 @@ public interface InventoryMenu {
 
     /**
      * Gets the index of the last filled slot in the GUI.
-     * @return The index of the last filled slot.
+     * @return The index of the last filled slot, or -1 if the GUI is empty.
      */
     int lastItem();
 
@@ -71,6 +91,30 @@ public interface InventoryMenu {
      */
     void open(ServerPlayer player);
 
+    /**
+     * Opens the GUI for many players at once. The windows are opened over the following ticks, a limited number per
+     * tick. Nothing is shared between players: each player's title and items are resolved separately when their
+     * window is opened, since they may depend on the player. To resolve them once for players who see the same menu,
+     * use {@link #openAll(Collection, Function)}.
+     * @param players The players to open the menu for.
+     * @see RenderBudget#setMaxOpensPerTick(int)
+     */
+    default void openAll(Collection<ServerPlayer> players) {
+        openAll(players, player -> player);
+    }
+
+    /**
+     * Opens the GUI for many players at once. The windows are opened over the following ticks, a limited number per
+     * tick. Players in the same group share one resolved title and one set of resolved items, taken from the first
+     * player of the group to be opened, so groups should only contain players who would see the same menu.
+     * @param players The players to open the menu for.
+     * @param group Some logic to find the group of each player, such as their team or language.
+     * @see RenderBudget#setMaxOpensPerTick(int)
+     */
+    default void openAll(Collection<ServerPlayer> players, Function<ServerPlayer, ?> group) {
+        OpenQueue.submit(players, this::open);
+    }
+
     /**
      * Closes the GUI for the given player
      */
@@ -87,6 +131,14 @@ public interface InventoryMenu {
      */
     void moveViewers(InventoryMenu other);
 
+    /**
+     * Creates a batch of changes to this GUI which can be filled from any thread. Once committed, the changes are
+     * applied together on the server thread at the end of the next tick, followed by a single update.
+     * The other methods of this interface should only be called from the server thread.
+     * @return A new, empty batch.
+     */
+    Batch batch();
+
 
     /**
      * Creates a new Inventory GUI with a single page which can hold the given number of items.
@@ -132,10 +184,95 @@ public interface InventoryMenu {
     }
 
     /**
-     * Creates or retrieves an item for an inventory menu based on the given context
+     * A set of changes to an inventory menu which can be made off of the server thread.
+     * @see InventoryMenu#batch()
+     */
+    interface Batch {
+
+        /**
+         * Queues a change to the item and click event at the given index of the GUI.
+         * @see InventoryMenu#setItem(int, ItemStack, ClickEvent)
+         */
+        void setItem(int index, ItemStack itemStack, ClickEvent event);
+
+        /**
+         * Queues a change to the item and click event at the given index of the GUI.
+         * @see InventoryMenu#setItem(int, ItemSupplier, ClickEvent)
+         */
+        void setItem(int index, ItemSupplier itemStack, ClickEvent event);
+
+        /**
+         * Queues the removal of the item and click event at the given index of the GUI.
+         * @see InventoryMenu#clearItem(int)
+         */
+        void clearItem(int index);
+
+        /**
+         * Queues the removal of all items and actions from the GUI.
+         * @see InventoryMenu#clear()
+         */
+        void clear();
+
+        /**
+         * Submits all queued changes to be applied on the server thread at the end of the next tick. The batch is
+         * emptied and may be reused afterward.
+         */
+        void commit();
+    }
+
+    /**
+     * Creates or retrieves an item for an inventory menu based on the given context. The context holds a
+     * {@link RenderMemo} shared by every slot and the title rendered for the same viewer in the same pass. Suppliers
+     * only reuse values through it if they resolve messages with {@link RenderMemo#resolve(Message, PipelineContext)}
+     * or store values with {@link RenderMemo#get(Object, java.util.function.Supplier)}.
      */
     interface ItemSupplier {
         ItemStack get(PipelineContext player);
+
+        /**
+         * Gets a value which changes whenever this supplier would return a different item. Slots holding this supplier
+         * are automatically bound to the value.
+         * @return The value this supplier depends on, or null.
+         * @see InventoryMenu#bindSlot(int, ObservableValue)
+         */
+        default ObservableValue<?> source() {
+            return null;
+        }
+
+        /**
+         * Determines whether this supplier can be called from any thread, at the same time as other suppliers. Suppliers
+         * which only read their context and immutable state can be resolved in parallel when a menu with many viewers
+         * is updated.
+         * @return Whether this supplier is thread-safe.
+         */
+        default boolean isThreadSafe() {
+            return false;
+        }
+
+        /**
+         * Wraps the given supplier so it is marked as thread-safe.
+         * @param supplier A supplier which can be called from any thread.
+         * @return A new thread-safe supplier.
+         * @see ItemSupplier#isThreadSafe()
+         */
+        static ItemSupplier threadSafe(ItemSupplier supplier) {
+            return new ItemSupplier() {
+                @Override
+                public ItemStack get(PipelineContext ctx) {
+                    return supplier.get(ctx);
+                }
+
+                @Override
+                public ObservableValue<?> source() {
+                    return supplier.source();
+                }
+
+                @Override
+                public boolean isThreadSafe() {
+                    return true;
+                }
+            };
+        }
     }
 
 }
@@ -0,0 +1,23 @@
+package org.wallentines.invmenu.api;
+
+import org.wallentines.invmenu.impl.ViewerTracker;
+
+/**
+ * Counters describing how menus have behaved since the server started, for use in metrics and debug commands. May be
+ * read from any thread.
+ */
+public final class MenuDiagnostics {
+
+    private MenuDiagnostics() { }
+
+    /**
+     * Gets the total number of stale viewers which have been swept from menus since the server started. A viewer is
+     * stale once its player has left, or has opened another container without the menu being closed. Each of these
+     * would otherwise have been kept, and rendered to, until the menu was closed.
+     * @return The number of leaked viewers.
+     */
+    public static long leakedViewers() {
+        return ViewerTracker.leakedViewers();
+    }
+
+}
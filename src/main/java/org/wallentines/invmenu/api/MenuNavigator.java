@@ -0,0 +1,76 @@
+package org.wallentines.invmenu.api;
+
+import net.minecraft.server.level.ServerPlayer;
+import org.wallentines.invmenu.impl.NavigationStack;
+
+/**
+ * A per-player navigation stack for menus which form a tree, such as a main menu leading to categories and then to
+ * individual items. Going back reopens the previous menu as the player left it, including its page or scroll position,
+ * and reuses the items they were shown if the menu has not changed since. Should only be used from the server thread.
+ */
+public final class MenuNavigator {
+
+    private MenuNavigator() { }
+
+    /**
+     * Remembers the menu the given player is viewing, then opens another menu for them.
+     * @param player The player.
+     * @param menu The menu to open.
+     */
+    public static void open(ServerPlayer player, InventoryMenu menu) {
+        NavigationStack.open(player, menu);
+    }
+
+    /**
+     * Remembers the menu the given player is viewing, so they can go back to it. Useful before opening a menu in some
+     * other way, such as at a specific page. Does nothing if they are not viewing an inventory menu.
+     * @param player The player.
+     */
+    public static void push(ServerPlayer player) {
+        NavigationStack.push(player);
+    }
+
+    /**
+     * Reopens the last menu remembered for the given player.
+     * @param player The player.
+     * @return Whether there was a menu to go back to.
+     */
+    public static boolean back(ServerPlayer player) {
+        return NavigationStack.back(player);
+    }
+
+    /**
+     * Forgets all menus remembered for the given player.
+     * @param player The player.
+     */
+    public static void clear(ServerPlayer player) {
+        NavigationStack.clear(player);
+    }
+
+    /**
+     * Gets the number of menus the given player can go back through.
+     * @param player The player.
+     * @return The number of remembered menus.
+     */
+    public static int depth(ServerPlayer player) {
+        return NavigationStack.depth(player);
+    }
+
+    /**
+     * Changes the maximum number of menus remembered per player. Older menus are forgotten first.
+     * @param depth The maximum depth.
+     */
+    public static void setMaxDepth(int depth) {
+        NavigationStack.setMaxDepth(depth);
+    }
+
+    /**
+     * Changes how long remembered menus keep the items their player was shown. After this time, going back still works,
+     * but the menu's items are resolved again.
+     * @param ticks The number of ticks to keep cached items for.
+     */
+    public static void setCacheTime(int ticks) {
+        NavigationStack.setCacheTime(ticks);
+    }
+
+}
@@ -0,0 +1,65 @@
+package org.wallentines.invmenu.api;
+
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.world.item.ItemStack;
+import org.wallentines.invmenu.impl.MappedMenuStorage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Persistent storage for the items in a paged inventory menu. Menus backed by storage only decode the items on a page
+ * when it is opened, and only write a page back when it has been changed.
+ * Should only be used from the server thread.
+ * @see PagedInventoryMenu#create(org.wallentines.pseudonym.Message, PagedInventoryMenu.SizeProvider, MenuStorage, PagedInventoryMenu.IndexedClickEvent)
+ */
+public interface MenuStorage extends Closeable {
+
+    /**
+     * Gets the number of slots in the storage, including empty slots before the last item.
+     * @return The number of slots.
+     */
+    int size();
+
+    /**
+     * Reads the item at the given index.
+     * @param index The slot index.
+     * @return The stored item, or an empty stack.
+     */
+    ItemStack read(int index);
+
+    /**
+     * Determines whether the item at the given index is empty, without decoding it.
+     * @param index The slot index.
+     * @return Whether there is no item stored at the index.
+     */
+    boolean isEmpty(int index);
+
+    /**
+     * Changes the item at the given index. Changes may not be written to disk until the next flush.
+     * @param index The slot index.
+     * @param itemStack The new item, or an empty stack.
+     */
+    void write(int index, ItemStack itemStack);
+
+    /**
+     * Writes all pending changes to disk.
+     * @throws IOException If the changes could not be written.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Opens or creates a compact binary file of items with a memory-mapped index. Items are stored as NBT along with the
+     * game's data version, and are upgraded with the data fixer when they are read by a newer game version. Files saved
+     * by a newer game version cannot be opened.
+     * @param file The file to open.
+     * @param registries The registries used to serialize items.
+     * @return A new storage backed by the file.
+     * @throws IOException If the file could not be opened or is not a valid storage file.
+     */
+    static MenuStorage open(Path file, RegistryAccess registries) throws IOException {
+        return MappedMenuStorage.open(file, registries);
+    }
+
+}
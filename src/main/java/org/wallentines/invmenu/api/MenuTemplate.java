@@ -0,0 +1,60 @@
+package org.wallentines.invmenu.api;
+
+import net.minecraft.resources.Identifier;
+import net.minecraft.server.level.ServerPlayer;
+import org.wallentines.invmenu.impl.MenuDefinitionLoader;
+import org.wallentines.pseudonym.PlaceholderManager;
+
+import java.util.Optional;
+
+/**
+ * An immutable menu definition loaded from a datapack. Definitions are read from
+ * {@code data/<namespace>/menu/<path>.json} and compiled when data is loaded or reloaded, so opening a menu from a
+ * template never needs to parse anything.
+ */
+public interface MenuTemplate {
+
+    /**
+     * Gets the ID of this template.
+     * @return The template ID.
+     */
+    Identifier id();
+
+    /**
+     * Gets a menu built from this template which is shared between all players who open the template.
+     * @return The shared menu.
+     */
+    InventoryMenu menu();
+
+    /**
+     * Builds a new menu from this template, which can be modified independently of the shared menu.
+     * @return A new menu.
+     */
+    InventoryMenu create();
+
+    /**
+     * Opens the shared menu for the given player.
+     * @param player The player to open the menu for.
+     */
+    default void open(ServerPlayer player) {
+        menu().open(player);
+    }
+
+    /**
+     * Gets the template with the given ID from the currently loaded datapacks.
+     * @param id The template ID.
+     * @return The template, or an empty optional if there is no such template.
+     */
+    static Optional<MenuTemplate> get(Identifier id) {
+        return MenuDefinitionLoader.get(id);
+    }
+
+    /**
+     * Sets the placeholder manager used to parse menu definitions. Takes effect on the next reload.
+     * @param manager The placeholder manager.
+     */
+    static void setPlaceholderManager(PlaceholderManager manager) {
+        MenuDefinitionLoader.setPlaceholderManager(manager);
+    }
+
+}
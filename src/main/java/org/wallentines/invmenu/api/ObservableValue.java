@@ -0,0 +1,88 @@
+package org.wallentines.invmenu.api;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * A value which notifies listeners when it changes. Inventory menu slots can be bound to an observable value, so they
+ * are re-resolved for their viewers whenever it changes.
+ * May be read and changed from any thread.
+ * @param <T> The type of value.
+ * @see InventoryMenu#bindSlot(int, ObservableValue)
+ */
+public class ObservableValue<T> {
+
+    private final AtomicReference<T> value;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    public ObservableValue(T value) {
+        this.value = new AtomicReference<>(value);
+    }
+
+    /**
+     * Gets the current value.
+     * @return The current value.
+     */
+    public T get() {
+        return value.get();
+    }
+
+    /**
+     * Changes the value, and notifies listeners if it is not equal to the previous value.
+     * @param value The new value.
+     */
+    public void set(T value) {
+        T old = this.value.getAndSet(value);
+        if (!Objects.equals(old, value)) {
+            markChanged();
+        }
+    }
+
+    /**
+     * Atomically changes the value, and notifies listeners if it is not equal to the previous value.
+     * @param function A function to compute the new value from the current one.
+     * @return The new value.
+     */
+    public T update(UnaryOperator<T> function) {
+        T old;
+        T updated;
+        do {
+            old = value.get();
+            updated = function.apply(old);
+        } while (!value.compareAndSet(old, updated));
+
+        if (!Objects.equals(old, updated)) {
+            markChanged();
+        }
+        return updated;
+    }
+
+    /**
+     * Notifies listeners that the value has changed. Useful when the value is mutable and was changed in place.
+     */
+    public void markChanged() {
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Adds a listener which will be called each time the value changes, on the thread which changed it.
+     * @param listener The listener to add.
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener from this value.
+     * @param listener The listener to remove.
+     */
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+}
@@ -7,6 +7,8 @@ import org.wallentines.invmenu.impl.PagedInventoryMenuImpl;
 import org.wallentines.pseudonym.Message;
 import org.wallentines.pseudonym.PipelineContext;
 
+import java.util.Collection;
+
 public interface PagedInventoryMenu extends InventoryMenu {
 
     /**
@@ -32,6 +34,53 @@ public interface PagedInventoryMenu extends InventoryMenu {
      */
     void setItem(int index, ItemSupplier itemStack, PagedClickEvent event);
 
+    /**
+     * Inserts an item at the given index, shifting the item there and each item after it forward by one slot.
+     * @param index The slot index.
+     * @param itemStack The item to insert.
+     * @param event The click event to invoke when a player clicks the item.
+     */
+    void insert(int index, ItemStack itemStack, ClickEvent event);
+
+    /**
+     * Inserts an item at the given index, shifting the item there and each item after it forward by one slot. The item
+     * will be resolved with respect to each player.
+     * @param index The slot index.
+     * @param itemStack The item to insert.
+     * @param event The click event to invoke when a player clicks the item.
+     */
+    void insert(int index, ItemSupplier itemStack, ClickEvent event);
+
+    /**
+     * Inserts an item at the given index, shifting the item there and each item after it forward by one slot.
+     * @param index The slot index.
+     * @param itemStack The item to insert.
+     * @param event The click event to invoke when a player clicks the item.
+     */
+    void insert(int index, ItemStack itemStack, PagedClickEvent event);
+
+    /**
+     * Inserts an item at the given index, shifting the item there and each item after it forward by one slot. The item
+     * will be resolved with respect to each player.
+     * @param index The slot index.
+     * @param itemStack The item to insert.
+     * @param event The click event to invoke when a player clicks the item.
+     */
+    void insert(int index, ItemSupplier itemStack, PagedClickEvent event);
+
+    /**
+     * Removes the item at the given index, shifting each item after it back by one slot. Pages which are left empty
+     * at the end of the menu are removed.
+     * @param index The slot index.
+     */
+    void remove(int index);
+
+    /**
+     * Removes all empty slots between items, shifting items back so they are contiguous. Pages which are left empty
+     * at the end of the menu are removed.
+     */
+    void compact();
+
 
     /**
      * Gets the number of pages in this menu
@@ -56,6 +105,36 @@ public interface PagedInventoryMenu extends InventoryMenu {
      */
     void addBottomReservedRow(RowProvider rowProvider);
 
+    /**
+     * Sets the terms used to find the item at the given index when filtering this menu. The terms are removed when the
+     * item is cleared.
+     * @param index The slot index.
+     * @param text Text describing the item, such as its name. Each word is matched by prefix.
+     * @param tags Tags describing the item, such as its category. Each tag is matched exactly.
+     * @see PagedInventoryMenu#filter(String)
+     */
+    void setSearchTerms(int index, String text, Collection<String> tags);
+
+    /**
+     * Creates a view of this menu containing only the items which match every term in the given query. Terms starting
+     * with {@code #} match tags, and other terms match the start of any word in an item's text. The view has its own
+     * pages and reserved rows, but shares its items and click events with this menu. Later changes to this menu are not
+     * reflected in the view.
+     * @param query The query.
+     * @return A new paged menu containing the matching items, in order.
+     * @see PagedInventoryMenu#setSearchTerms(int, String, Collection)
+     */
+    PagedInventoryMenu filter(String query);
+
+    /**
+     * Writes any changed pages back to this menu's storage, if it has one.
+     * @see PagedInventoryMenu#create(Message, SizeProvider, MenuStorage, IndexedClickEvent)
+     */
+    void save();
+
+    @Override
+    PagedBatch batch();
+
 
 
     /**
@@ -103,6 +182,23 @@ public interface PagedInventoryMenu extends InventoryMenu {
     }
 
 
+    /**
+     * Creates a new paged Inventory GUI whose items are kept in the given storage. Only pages which are being viewed
+     * are kept in memory. Items set on pages are written back to the storage when the last viewer of a page closes it,
+     * or when the menu is saved. Only plain items can be stored: setting or inserting an ItemSupplier, or an item with
+     * its own click event, throws an UnsupportedOperationException. Clicks on stored items are passed to the given
+     * event instead.
+     * @param title Some logic to get the menu's title, per player.
+     * @param sizeProvider Some logic to determine the size of each page.
+     * @param storage The storage to load items from and save items to.
+     * @param event The click event to invoke when a player clicks a stored item.
+     * @return A new PagedInventoryGui
+     */
+    static PagedInventoryMenu create(Message<Component> title, PagedInventoryMenu.SizeProvider sizeProvider, MenuStorage storage, IndexedClickEvent event) {
+        return PagedInventoryMenuImpl.create(title, sizeProvider, storage, event, PipelineContext.EMPTY);
+    }
+
+
     /**
      * Determines the size of each page of a paged inventory menu.
      */
@@ -158,6 +254,19 @@ public interface PagedInventoryMenu extends InventoryMenu {
          */
         void fillRow(int page, Row row, PagedInventoryMenu menu);
 
+        /**
+         * Gets a key identifying what this row shows on the given page. The row is only filled again when its key
+         * changes, and pages for which the key is equal share the same items. Because click events receive the page
+         * they were clicked on, a row which only uses the page in its click events does not need to depend on it here.
+         * By default, every page of every page count gets its own key.
+         * @param page The page the row is on.
+         * @param pageCount The number of pages in the menu.
+         * @return A key for the row's contents.
+         */
+        default long renderKey(int page, int pageCount) {
+            return ((long) page << 32) | pageCount;
+        }
+
         /**
          * A row provider which gives page controls using the given items.
          * @param nextPage The item to use to advance to the next page.
@@ -165,23 +274,37 @@ public interface PagedInventoryMenu extends InventoryMenu {
          * @return A new row provider with page controls.
          */
         static RowProvider pageControls(ItemSupplier nextPage, ItemSupplier prevPage) {
-            return (page, row, gui) -> {
-
-                if(page > 0) {
-                    row.setItem(0, prevPage, ((player, type, p) -> {
-                        gui.open(player, p - 1);
-                    }));
-                }
-                if(page + 1 < gui.pageCount()) {
-                    row.setItem(8, nextPage, ((player, type, p) -> {
-                        gui.open(player, p + 1);
-                    }));
-                }
-            };
+            return new PagedInventoryMenuImpl.PageControls(nextPage, prevPage);
         }
     }
 
 
+    /**
+     * A set of changes to a paged inventory menu which can be made off of the server thread.
+     * @see InventoryMenu#batch()
+     */
+    interface PagedBatch extends Batch {
+
+        /**
+         * Queues a change to the item and click event at the given index of the GUI.
+         * @see PagedInventoryMenu#setItem(int, ItemStack, PagedClickEvent)
+         */
+        void setItem(int index, ItemStack itemStack, PagedClickEvent event);
+
+        /**
+         * Queues a change to the item and click event at the given index of the GUI.
+         * @see PagedInventoryMenu#setItem(int, ItemSupplier, PagedClickEvent)
+         */
+        void setItem(int index, ItemSupplier itemStack, PagedClickEvent event);
+
+        /**
+         * Queues a resize of the GUI.
+         * @see PagedInventoryMenu#resize(int)
+         */
+        void resize(int max);
+    }
+
+
     /**
      * A page-aware click event
      * @see org.wallentines.invmenu.api.InventoryMenu.ClickEvent
@@ -190,4 +313,12 @@ public interface PagedInventoryMenu extends InventoryMenu {
         void execute(ServerPlayer player, ClickType type, int page);
     }
 
+    /**
+     * A click event which receives the index of the clicked item within the whole menu
+     * @see org.wallentines.invmenu.api.InventoryMenu.ClickEvent
+     */
+    interface IndexedClickEvent {
+        void execute(ServerPlayer player, ClickType type, int index);
+    }
+
 }
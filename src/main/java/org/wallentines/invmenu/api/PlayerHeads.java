@@ -0,0 +1,93 @@
+package org.wallentines.invmenu.api;
+
+import com.mojang.authlib.GameProfile;
+import org.wallentines.invmenu.impl.HeadCache;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Item suppliers for player heads. Head items are cached per profile UUID and shared between all menus and viewers.
+ * Profiles without skin data are resolved asynchronously, and a plain head is shown until they are resolved.
+ */
+public final class PlayerHeads {
+
+    private PlayerHeads() { }
+
+    /**
+     * Creates an item supplier which gives the head of the player viewing the menu.
+     * @return A new item supplier.
+     */
+    public static InventoryMenu.ItemSupplier viewer() {
+        return HeadCache.viewer();
+    }
+
+    /**
+     * Creates an item supplier which gives the head of the player with the given UUID.
+     * @param id The player's UUID.
+     * @return A new item supplier.
+     */
+    public static InventoryMenu.ItemSupplier of(UUID id) {
+        return HeadCache.of(id);
+    }
+
+    /**
+     * Creates an item supplier which gives the head of the given profile. If the profile has no skin data, it will be
+     * resolved by its UUID.
+     * @param profile The player's profile.
+     * @return A new item supplier.
+     */
+    public static InventoryMenu.ItemSupplier of(GameProfile profile) {
+        return HeadCache.of(profile);
+    }
+
+    /**
+     * Changes how profiles are resolved. By default, profiles are fetched from the server's session service.
+     * @param resolver The new resolver.
+     */
+    public static void setResolver(Resolver resolver) {
+        HeadCache.setResolver(resolver);
+    }
+
+    /**
+     * Changes the maximum number of head items to keep cached.
+     * @param size The maximum number of cached heads.
+     */
+    public static void setCacheSize(int size) {
+        HeadCache.setMaxSize(size);
+    }
+
+    /**
+     * Removes all cached heads and forgets pending resolutions.
+     */
+    public static void clearCache() {
+        HeadCache.clear();
+    }
+
+
+    /**
+     * Looks up complete player profiles, including skin data.
+     */
+    public interface Resolver {
+
+        /**
+         * Starts resolving the profile with the given UUID. May be called from the server thread, so should not block.
+         * @param id The player's UUID.
+         * @return A future which completes with the resolved profile, or an empty optional if there is no such profile.
+         */
+        CompletableFuture<Optional<GameProfile>> resolve(UUID id);
+
+        /**
+         * Creates a resolver which looks profiles up synchronously, without any network access. Useful for testing
+         * or offline servers.
+         * @param lookup A function to find a profile by UUID, which may return null.
+         * @return A new resolver.
+         */
+        static Resolver local(Function<UUID, GameProfile> lookup) {
+            return id -> CompletableFuture.completedFuture(Optional.ofNullable(lookup.apply(id)));
+        }
+    }
+
+}
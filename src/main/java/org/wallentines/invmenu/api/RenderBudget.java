@@ -0,0 +1,48 @@
+package org.wallentines.invmenu.api;
+
+import org.wallentines.invmenu.impl.OpenQueue;
+import org.wallentines.invmenu.impl.RenderQueue;
+
+/**
+ * Limits how much menu rendering can happen in a single server tick. By default there is no limit, and menus are
+ * rendered as soon as they are updated. Once a limit is set, updates are queued and spread over the following ticks,
+ * with each menu taking turns. A player who clicks a menu always has their own view rendered immediately.
+ */
+public final class RenderBudget {
+
+    private RenderBudget() { }
+
+    /**
+     * Changes the maximum number of slots to resolve and send each tick.
+     * @param slots The maximum number of slots, or 0 for no limit.
+     */
+    public static void setMaxSlots(int slots) {
+        RenderQueue.setMaxSlots(slots);
+    }
+
+    /**
+     * Changes the maximum amount of time to spend rendering menus each tick. The limit is checked between slices of a
+     * few slots, so it may be slightly exceeded.
+     * @param micros The maximum time in microseconds, or 0 for no limit.
+     */
+    public static void setMaxMicros(long micros) {
+        RenderQueue.setMaxMicros(micros);
+    }
+
+    /**
+     * Changes the maximum number of windows opened each tick by {@link InventoryMenu#openAll(java.util.Collection)}.
+     * @param opens The maximum number of windows to open per tick.
+     */
+    public static void setMaxOpensPerTick(int opens) {
+        OpenQueue.setMaxPerTick(opens);
+    }
+
+    /**
+     * Removes all limits, so menus are rendered as soon as they are updated.
+     */
+    public static void unlimited() {
+        RenderQueue.setMaxSlots(0);
+        RenderQueue.setMaxMicros(0);
+    }
+
+}
@@ -0,0 +1,78 @@
+package org.wallentines.invmenu.api;
+
+import net.minecraft.network.chat.Component;
+import org.jetbrains.annotations.ApiStatus;
+import org.wallentines.pseudonym.Message;
+import org.wallentines.pseudonym.PipelineContext;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Values computed while rendering a menu for one viewer, shared between all slots rendered in the same pass. Each
+ * viewer's context holds its own memo, which is emptied at the start of every render pass, so item suppliers can reuse
+ * expensive values such as formatted placeholders or messages instead of computing them once per slot. Memos may be
+ * used from multiple threads when thread-safe suppliers are resolved in parallel.
+ */
+public final class RenderMemo {
+
+    private static final Object NULL = new Object();
+
+    private final Map<Object, Object> values = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the value stored for the given key in this render pass, computing it if it has not been computed yet.
+     * @param key The key, compared by equality.
+     * @param compute Some logic to compute the value if it is missing.
+     * @return The stored or computed value.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Supplier<T> compute) {
+        Object out = values.get(key);
+        if (out == null) {
+            // Computed outside the map, so computations may use the memo themselves
+            T value = compute.get();
+            Object existing = values.putIfAbsent(key, value == null ? NULL : value);
+            out = existing == null ? (value == null ? NULL : value) : existing;
+        }
+        return out == NULL ? null : (T) out;
+    }
+
+    /**
+     * Empties this memo for a new render pass.
+     */
+    @ApiStatus.Internal
+    public void clear() {
+        values.clear();
+    }
+
+    /**
+     * Resolves a message in the given context, reusing the result if the same message was already resolved in the same
+     * context during this render pass.
+     * @param message The message to resolve.
+     * @param ctx The context given to an item supplier.
+     * @return The resolved message.
+     */
+    public static Component resolve(Message<Component> message, PipelineContext ctx) {
+        RenderMemo memo = ctx.getFirst(RenderMemo.class).orElse(null);
+        if (memo == null) {
+            return message.get(ctx);
+        }
+        return memo.get(new MessageKey(message, ctx), () -> message.get(ctx));
+    }
+
+    private record MessageKey(Message<Component> message, PipelineContext ctx) {
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof MessageKey other && other.message == message && other.ctx == ctx;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(message) * 31 + System.identityHashCode(ctx);
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package org.wallentines.invmenu.api;
+
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.level.ServerPlayer;
+import org.wallentines.invmenu.impl.ScrollingInventoryMenuImpl;
+import org.wallentines.pseudonym.Message;
+import org.wallentines.pseudonym.PipelineContext;
+
+/**
+ * An inventory menu which shows a window of rows over a list of items of any length. Unlike a paged menu, each viewer
+ * scrolls through the list one row at a time, and scrolling keeps the same container open and only sends the slots
+ * which change. The bottom row of the window holds the scroll controls and any other control items. Slot indices refer
+ * to positions in the whole list, and {@link #rows()} and {@link #size()} describe the list rather than the window: the
+ * size is the length of the list, and the rows are the number of rows needed to hold it. Use {@link #windowRows()} for
+ * the number of rows shown at once.
+ */
+public interface ScrollingInventoryMenu extends InventoryMenu {
+
+    /**
+     * Opens the GUI for the given player, scrolled to the given row.
+     * @param player The player to open the menu for.
+     * @param row The first row of the list to show.
+     */
+    void open(ServerPlayer player, int row);
+
+    /**
+     * Scrolls the given player's view of this GUI by a number of rows. Does nothing if the player is not viewing it.
+     * @param player The player viewing the menu.
+     * @param rows The number of rows to scroll by. Negative values scroll up.
+     */
+    void scroll(ServerPlayer player, int rows);
+
+    /**
+     * Scrolls the given player's view of this GUI to the given row. Does nothing if the player is not viewing it.
+     * @param player The player viewing the menu.
+     * @param row The first row of the list to show.
+     */
+    void scrollTo(ServerPlayer player, int row);
+
+    /**
+     * Gets the first row of the list the given player can see.
+     * @param player The player viewing the menu.
+     * @return The first visible row, or -1 if the player is not viewing this GUI.
+     */
+    int scrollPosition(ServerPlayer player);
+
+    /**
+     * Gets the highest row the GUI can be scrolled to.
+     * @return The maximum scroll position.
+     */
+    int maxScroll();
+
+    /**
+     * Gets the number of rows of the list which are visible at once, not counting the control row.
+     * @return The number of visible rows.
+     */
+    int windowRows();
+
+    /**
+     * Sets the items used to scroll the GUI. They are shown in the first and last slots of the control row, only when
+     * there is somewhere to scroll to. Clicking scrolls by one row, and shift-clicking scrolls by a whole window.
+     * @param up The item to use to scroll up, or null for no control.
+     * @param down The item to use to scroll down, or null for no control.
+     */
+    void setScrollControls(ItemSupplier up, ItemSupplier down);
+
+    /**
+     * Sets an item and click event in the control row of the GUI. The scroll controls take precedence over items in the
+     * first and last columns while they are shown.
+     * @param column The column in the control row, from 0 to 8.
+     * @param itemStack The item to put in that column.
+     * @param event The click event to invoke when a player clicks the item.
+     */
+    void setControlItem(int column, ItemSupplier itemStack, ClickEvent event);
+
+
+    /**
+     * Creates a new scrolling Inventory GUI.
+     * @param title Some logic to get the menu's title, per player.
+     * @param windowRows The number of rows of the list to show at once. Must be between 1 and 5.
+     * @return A new ScrollingInventoryMenu
+     */
+    static ScrollingInventoryMenu create(Message<Component> title, int windowRows) {
+        return create(title, windowRows, PipelineContext.EMPTY);
+    }
+
+    /**
+     * Creates a new scrolling Inventory GUI with the given inherent context.
+     * @param title Some logic to get the menu's title, per player.
+     * @param windowRows The number of rows of the list to show at once. Must be between 1 and 5.
+     * @param context Context to be applied each time an item or the title is resolved.
+     * @return A new ScrollingInventoryMenu
+     */
+    static ScrollingInventoryMenu create(Message<Component> title, int windowRows, PipelineContext context) {
+        return ScrollingInventoryMenuImpl.create(title, windowRows, context);
+    }
+
+}
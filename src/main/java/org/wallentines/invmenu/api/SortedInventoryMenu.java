@@ -0,0 +1,114 @@
+package org.wallentines.invmenu.api;
+
+import net.minecraft.network.chat.Component;
+import net.minecraft.world.item.ItemStack;
+import org.wallentines.invmenu.impl.SortedInventoryMenuImpl;
+import org.wallentines.pseudonym.Message;
+import org.wallentines.pseudonym.PipelineContext;
+
+import java.util.Comparator;
+
+/**
+ * A paged inventory menu whose items are kept ordered by a key. Adding or removing an item shifts the items from its
+ * position to the end of the menu. Re-keying an item only shifts the items between its old and new positions. In both
+ * cases, only the viewers of the pages which changed are updated.
+ * @param <K> The type of key the items are sorted by.
+ */
+public interface SortedInventoryMenu<K> {
+
+    /**
+     * Adds an item to the menu at the position determined by its key. Items with equal keys are kept in the order they
+     * were added.
+     * @param key The key to sort the item by.
+     * @param itemStack The item to add.
+     * @param event The click event to invoke when a player clicks the item.
+     * @return An entry which can be used to remove or re-key the item later.
+     */
+    Entry<K> add(K key, ItemStack itemStack, PagedInventoryMenu.PagedClickEvent event);
+
+    /**
+     * Adds an item to the menu at the position determined by its key. The item will be resolved with respect to each
+     * player.
+     * @param key The key to sort the item by.
+     * @param itemStack The item to add.
+     * @param event The click event to invoke when a player clicks the item.
+     * @return An entry which can be used to remove or re-key the item later.
+     */
+    Entry<K> add(K key, InventoryMenu.ItemSupplier itemStack, PagedInventoryMenu.PagedClickEvent event);
+
+    /**
+     * Removes an item from the menu, shifting each item after it back by one slot.
+     * @param entry The entry to remove.
+     */
+    void remove(Entry<K> entry);
+
+    /**
+     * Changes the key of an item, moving it to its new position.
+     * @param entry The entry to re-key.
+     * @param key The new key.
+     */
+    void rekey(Entry<K> entry, K key);
+
+    /**
+     * Removes all items from the menu.
+     */
+    void clear();
+
+    /**
+     * Gets the number of items in the menu.
+     * @return The number of items.
+     */
+    int count();
+
+    /**
+     * Gets the paged menu which displays the sorted items. Items should only be added to or removed from the content
+     * area of the menu through this object.
+     * @return The underlying paged menu.
+     */
+    PagedInventoryMenu menu();
+
+
+    /**
+     * Creates a new sorted, paged Inventory GUI.
+     * @param title Some logic to get the menu's title, per player.
+     * @param sizeProvider Some logic to determine the size of each page.
+     * @param comparator The order to keep items in.
+     * @return A new SortedInventoryMenu
+     */
+    static <K> SortedInventoryMenu<K> create(Message<Component> title, PagedInventoryMenu.SizeProvider sizeProvider, Comparator<? super K> comparator) {
+        return SortedInventoryMenuImpl.create(title, sizeProvider, comparator, PipelineContext.EMPTY);
+    }
+
+    /**
+     * Creates a new sorted, paged Inventory GUI with the given inherent context.
+     * @param title Some logic to get the menu's title, per player.
+     * @param sizeProvider Some logic to determine the size of each page.
+     * @param comparator The order to keep items in.
+     * @param context Context to be applied each time an item or the title is resolved.
+     * @return A new SortedInventoryMenu
+     */
+    static <K> SortedInventoryMenu<K> create(Message<Component> title, PagedInventoryMenu.SizeProvider sizeProvider, Comparator<? super K> comparator, PipelineContext context) {
+        return SortedInventoryMenuImpl.create(title, sizeProvider, comparator, context);
+    }
+
+
+    /**
+     * An item in a sorted menu.
+     * @param <K> The type of key the item is sorted by.
+     */
+    interface Entry<K> {
+
+        /**
+         * Gets the current key of this entry.
+         * @return The key.
+         */
+        K key();
+
+        /**
+         * Gets the current index of this entry in the menu.
+         * @return The index, or -1 if the entry has been removed.
+         */
+        int index();
+    }
+
+}
@@ -0,0 +1,232 @@
+package org.wallentines.invmenu.impl;
+
+import com.mojang.authlib.GameProfile;
+import com.mojang.authlib.yggdrasil.ProfileResult;
+import net.minecraft.Util;
+import net.minecraft.core.component.DataComponents;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.minecraft.world.item.component.ResolvableProfile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wallentines.invmenu.api.InventoryMenu;
+import org.wallentines.invmenu.api.ObservableValue;
+import org.wallentines.invmenu.api.PlayerHeads;
+import org.wallentines.pseudonym.PipelineContext;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A bounded, least-recently-used cache of player head items, keyed by profile UUID. Slots holding a head which is
+ * still being resolved are bound to a value for that profile alone, so each resolution only re-resolves the slots
+ * waiting on it.
+ */
+public final class HeadCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HeadCache.class);
+
+    private static final ItemStack DEFAULT_HEAD = new ItemStack(Items.PLAYER_HEAD);
+    // Viewer heads depend on who is looking, so they are refreshed when any viewer's own head is resolved
+    private static final ObservableValue<Integer> VIEWER_RESOLVED = new ObservableValue<>(0);
+
+    private static final Object LOCK = new Object();
+    private static final Map<UUID, ItemStack> CACHE = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, ItemStack> eldest) {
+            return size() > maxSize;
+        }
+    };
+    private static final Set<UUID> PENDING = new HashSet<>();
+    private static final Set<UUID> VIEWER_PENDING = new HashSet<>();
+    private static final Map<UUID, ObservableValue<Boolean>> WAITING = new HashMap<>();
+
+    private static int maxSize = 1024;
+    private static PlayerHeads.Resolver resolver;
+    private static MinecraftServer server;
+
+    private HeadCache() { }
+
+    public static InventoryMenu.ItemSupplier viewer() {
+        return new ViewerSupplier();
+    }
+
+    public static InventoryMenu.ItemSupplier of(UUID id) {
+        return new ProfileSupplier(id, null);
+    }
+
+    public static InventoryMenu.ItemSupplier of(GameProfile profile) {
+        return new ProfileSupplier(profile.id(), profile);
+    }
+
+    public static void setResolver(PlayerHeads.Resolver resolver) {
+        HeadCache.resolver = resolver;
+    }
+
+    public static void setMaxSize(int size) {
+        synchronized (LOCK) {
+            maxSize = Math.max(1, size);
+        }
+    }
+
+    public static void clear() {
+        synchronized (LOCK) {
+            CACHE.clear();
+            PENDING.clear();
+            VIEWER_PENDING.clear();
+            WAITING.clear();
+        }
+    }
+
+    static void setServer(MinecraftServer server) {
+        HeadCache.server = server;
+    }
+
+    /**
+     * Gets the cached head for the given profile, building it immediately if the profile has skin data.
+     */
+    private static ItemStack get(UUID id, GameProfile known, boolean viewer) {
+
+        synchronized (LOCK) {
+            ItemStack cached = CACHE.get(id);
+            if (cached != null)
+                return cached;
+
+            if (known != null && !known.properties().isEmpty()) {
+                ItemStack out = build(known);
+                CACHE.put(id, out);
+                return out;
+            }
+
+            if (viewer) {
+                VIEWER_PENDING.add(id);
+            }
+            if (!PENDING.add(id))
+                return DEFAULT_HEAD;
+        }
+
+        resolve(id);
+        return DEFAULT_HEAD;
+    }
+
+    /**
+     * Gets the value which changes when the head for the given profile is resolved, starting the lookup if it has not
+     * started yet. Values only exist while their lookup is pending, and are dropped once it completes, so the number
+     * of values is bounded by the number of lookups in flight.
+     * @return The value, or null if the head is already cached or can be built without a lookup.
+     */
+    private static ObservableValue<?> waitingOn(UUID id, GameProfile known) {
+        if (known != null && !known.properties().isEmpty())
+            return null;
+
+        ObservableValue<Boolean> out;
+        synchronized (LOCK) {
+            if (CACHE.containsKey(id))
+                return null;
+
+            out = WAITING.computeIfAbsent(id, k -> new ObservableValue<>(false));
+            if (!PENDING.add(id))
+                return out;
+        }
+
+        resolve(id);
+        return out;
+    }
+
+    private static void resolve(UUID id) {
+
+        PlayerHeads.Resolver res = resolver;
+        if (res == null) {
+            res = sessionResolver();
+        }
+
+        CompletableFuture<Optional<GameProfile>> future;
+        try {
+            future = res.resolve(id);
+        } catch (Throwable th) {
+            future = CompletableFuture.failedFuture(th);
+        }
+
+        future.whenComplete((profile, th) -> MenuTicker.submit(() -> {
+            ObservableValue<Boolean> waiting;
+            boolean viewer;
+            synchronized (LOCK) {
+                if (!PENDING.remove(id))
+                    return;
+
+                if (th != null) {
+                    LOGGER.warn("Unable to resolve profile {} for a player head", id, th);
+                }
+
+                // Cache the default head on failure too, so missing profiles are not looked up repeatedly.
+                CACHE.put(id, profile == null || profile.isEmpty() ? DEFAULT_HEAD : build(profile.get()));
+                waiting = WAITING.remove(id);
+                viewer = VIEWER_PENDING.remove(id);
+            }
+            if (waiting != null) {
+                waiting.set(true);
+            }
+            if (viewer) {
+                VIEWER_RESOLVED.update(i -> i + 1);
+            }
+        }));
+    }
+
+    private static PlayerHeads.Resolver sessionResolver() {
+        MinecraftServer srv = server;
+        if (srv == null) {
+            return id -> CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        return id -> CompletableFuture.supplyAsync(() -> {
+            ProfileResult result = srv.services().sessionService().fetchProfile(id, true);
+            return Optional.ofNullable(result).map(ProfileResult::profile);
+        }, Util.nonCriticalIoPool());
+    }
+
+    private static ItemStack build(GameProfile profile) {
+        ItemStack out = new ItemStack(Items.PLAYER_HEAD);
+        out.set(DataComponents.PROFILE, ResolvableProfile.createResolved(profile));
+        return out;
+    }
+
+    private static class ViewerSupplier implements InventoryMenu.ItemSupplier {
+
+        @Override
+        public ItemStack get(PipelineContext ctx) {
+            Optional<ServerPlayer> player = ctx.getFirst(ServerPlayer.class);
+            if (player.isEmpty())
+                return DEFAULT_HEAD;
+
+            GameProfile profile = player.get().getGameProfile();
+            return HeadCache.get(profile.id(), profile, true);
+        }
+
+        @Override
+        public ObservableValue<?> source() {
+            return VIEWER_RESOLVED;
+        }
+    }
+
+    private record ProfileSupplier(UUID id, GameProfile profile) implements InventoryMenu.ItemSupplier {
+
+        @Override
+        public ItemStack get(PipelineContext ctx) {
+            return HeadCache.get(id, profile, false);
+        }
+
+        @Override
+        public ObservableValue<?> source() {
+            return waitingOn(id, profile);
+        }
+    }
+
+}
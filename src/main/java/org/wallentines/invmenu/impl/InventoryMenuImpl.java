@@ -2,9 +2,7 @@ package org.wallentines.invmenu.impl;
 
 import net.minecraft.network.chat.Component;
 import net.minecraft.server.level.ServerPlayer;
-import net.minecraft.world.Container;
 import net.minecraft.world.MenuProvider;
-import net.minecraft.world.SimpleContainer;
 import net.minecraft.world.entity.player.Inventory;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.inventory.AbstractContainerMenu;
@@ -16,42 +14,95 @@ import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wallentines.invmenu.api.InventoryMenu;
+import org.wallentines.invmenu.api.ObservableValue;
+import org.wallentines.invmenu.api.PagedInventoryMenu;
+import org.wallentines.invmenu.api.RenderMemo;
 import org.wallentines.pseudonym.Message;
 import org.wallentines.pseudonym.PipelineContext;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
-public class InventoryMenuImpl implements InventoryMenu {
+public class InventoryMenuImpl implements InventoryMenu, RefreshScheduler.Target, ViewerTracker.Tracked {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(InventoryMenuImpl.class);
 
     private final Message<Component> title;
     private final int rows;
     private final PipelineContext context;
-    protected final Entry[] items;
+    protected final SlotStore items;
     private final List<Menu> open = new ArrayList<>();
+    private RefreshScheduler.Task[] refreshTasks;
+    private Runnable closeListener;
+    private final SlotBindings bindings = new SlotBindings(this::refreshBound);
+    private int page;
+    private long version;
+    private BiConsumer<ServerPlayer, CachedScreen> reopenHandler;
 
     protected InventoryMenuImpl(Message<Component> title, int rows, PipelineContext context) {
+        this(title, rows, context, new SlotStore(rows * 9));
+    }
+
+    private InventoryMenuImpl(Message<Component> title, int rows, PipelineContext context, SlotStore items) {
         this.title = title;
         this.rows = rows;
-        this.items = new Entry[rows * 9];
+        this.items = items;
         this.context = context;
     }
 
     @Override
     public void setItem(int index, ItemStack itemStack, ClickEvent event) {
-        items[index] = new Entry(itemStack, event);
+        items.set(index, itemStack, event);
+        version++;
     }
 
     @Override
     public void setItem(int index, ItemSupplier itemStack, ClickEvent event) {
-        items[index] = new Entry(itemStack, event);
+        ObservableValue<?> previous = items.source(index);
+        items.set(index, itemStack, event);
+        bindings.rebind(items, previous, items.source(index), !open.isEmpty());
+        version++;
+    }
+
+    public void setItem(int index, ItemStack itemStack, PagedInventoryMenu.PagedClickEvent event) {
+        items.set(index, itemStack, event);
+        version++;
+    }
+
+    public void setItem(int index, ItemSupplier itemStack, PagedInventoryMenu.PagedClickEvent event) {
+        ObservableValue<?> previous = items.source(index);
+        items.set(index, itemStack, event);
+        bindings.rebind(items, previous, items.source(index), !open.isEmpty());
+        version++;
     }
 
     @Override
     public void clearItem(int index) {
-        items[index] = null;
+        ObservableValue<?> previous = items.source(index);
+        items.clear(index);
+        bindings.rebind(items, previous, null, !open.isEmpty());
+        version++;
+    }
+
+    @Override
+    public void setRefreshInterval(int index, int interval) {
+        items.setRefreshInterval(index, interval);
+        if (!open.isEmpty()) {
+            scheduleRefresh(index);
+        }
+    }
+
+    @Override
+    public void bindSlot(int index, ObservableValue<?> source) {
+        ObservableValue<?> previous = items.source(index);
+        items.setSource(index, source);
+        bindings.rebind(items, previous, source, !open.isEmpty());
     }
 
     @Override
@@ -66,8 +117,8 @@ public class InventoryMenuImpl implements InventoryMenu {
 
     @Override
     public int firstEmpty() {
-        for (int i = 0; i < items.length; i++) {
-            if (items[i] == null)
+        for (int i = 0; i < items.size(); i++) {
+            if (items.isEmpty(i))
                 return i;
         }
         return -1;
@@ -75,8 +126,8 @@ public class InventoryMenuImpl implements InventoryMenu {
 
     @Override
     public int lastItem() {
-        for (int i = items.length; i > 0; i--) {
-            if (items[i - 1] != null)
+        for (int i = items.size() - 1; i >= 0; i--) {
+            if (!items.isEmpty(i))
                 return i;
         }
         return -1;
@@ -85,13 +136,44 @@ public class InventoryMenuImpl implements InventoryMenu {
     @Override
     public void clear() {
         int last = lastItem();
-        for (int i = 0; i < last; i++) {
-            items[i] = null;
+        if (last != -1) {
+            items.clear(0, last + 1);
         }
+        version++;
     }
 
     @Override
     public void update() {
+        if (open.isEmpty()) {
+            markStale();
+            return;
+        }
+        version++;
+
+        // Slots may have been moved or replaced since the menu was opened
+        scheduleRefreshes();
+        bindings.listenAll(items);
+
+        if (!RenderQueue.isLimited()) {
+            PipelineContext[] contexts = new PipelineContext[open.size()];
+            for (int i = 0; i < contexts.length; i++) {
+                Menu menu = open.get(i);
+                menu.memo.clear();
+                contexts[i] = menu.ctx;
+            }
+
+            ItemStack[][] resolved = ParallelResolver.resolve(items, contexts);
+            if (resolved != null) {
+                for (int i = 0; i < contexts.length; i++) {
+                    Menu menu = open.get(i);
+                    if (!menu.isStale()) {
+                        menu.render(resolved[i]);
+                    }
+                }
+                return;
+            }
+        }
+
         for (Menu menu : open) {
             menu.update();
         }
@@ -103,15 +185,67 @@ public class InventoryMenuImpl implements InventoryMenu {
     }
 
     public void open(ServerPlayer player, PipelineContext context) {
+        open(player, context, null, null);
+    }
+
+    @Override
+    public void openAll(Collection<ServerPlayer> players, Function<ServerPlayer, ?> group) {
+        Map<Object, SharedOpen> groups = new HashMap<>();
+        OpenQueue.submit(players, player -> {
+            SharedOpen shared = groups.computeIfAbsent(group.apply(player), k -> new SharedOpen());
+            if (shared.version != version) {
+                // The menu changed while the group was being opened
+                shared.version = version;
+                shared.title = null;
+                shared.items = null;
+            }
+            // Each viewer gets its own stacks, so the group's snapshot cannot be changed through one of them
+            ItemStack[] cached = null;
+            if (shared.items != null) {
+                cached = new ItemStack[shared.items.length];
+                for (int i = 0; i < cached.length; i++) {
+                    cached[i] = shared.items[i].copy();
+                }
+            }
+            open(player, PipelineContext.of(player, InventoryMenuImpl.this), cached, shared);
+        });
+    }
+
+    private void open(ServerPlayer player, PipelineContext context, ItemStack[] cached) {
+        open(player, context, cached, null);
+    }
+
+    /**
+     * Opens the GUI for the given player, showing the given items instead of resolving them again where possible.
+     * Shared open state is filled in by the first player of a group to be opened.
+     */
+    private void open(ServerPlayer player, PipelineContext context, ItemStack[] cached, SharedOpen shared) {
 
         if (player.containerMenu != player.inventoryMenu) {
             player.closeContainer();
         }
 
         player.openMenu(new MenuProvider() {
+
+            // The menu is created before the title is requested, so the title can share its render memo
+            private Menu created;
+
             @Override
             public @NotNull Component getDisplayName() {
-                return title.get(InventoryMenuImpl.this.context.and(context));
+                if (shared == null) {
+                    return resolveTitle();
+                }
+                if (shared.title == null) {
+                    shared.title = resolveTitle();
+                }
+                return shared.title;
+            }
+
+            private Component resolveTitle() {
+                if (created == null) {
+                    return title.get(InventoryMenuImpl.this.context.and(context));
+                }
+                return RenderMemo.resolve(title, created.ctx);
             }
 
             @Override
@@ -119,8 +253,17 @@ public class InventoryMenuImpl implements InventoryMenu {
 
                 if (!(player instanceof ServerPlayer spl))
                     return null;
-                Menu out = new Menu(i, spl);
+                Menu out = new Menu(i, spl, context, cached);
+                created = out;
+                if (shared != null && shared.items == null) {
+                    shared.items = out.snapshot();
+                }
                 open.add(out);
+                if (open.size() == 1) {
+                    ViewerTracker.track(InventoryMenuImpl.this);
+                    scheduleRefreshes();
+                    bindings.listenAll(items);
+                }
 
                 return out;
             }
@@ -141,17 +284,101 @@ public class InventoryMenuImpl implements InventoryMenu {
         for (Menu m : List.copyOf(open)) {
             m.player.closeContainer();
         }
-        open.clear();
+        if (!open.isEmpty()) {
+            open.clear();
+            onLastViewerClosed();
+        }
     }
 
     @Override
     public void moveViewers(InventoryMenu other) {
+        // Opening another menu removes each viewer from this one
+        for (Menu menu : List.copyOf(open)) {
+            if (!menu.isStale()) {
+                other.open(menu.player);
+            }
+        }
+    }
+
+    @Override
+    public Batch batch() {
+        return new MenuBatch<>(this);
+    }
+
+    public boolean hasViewers() {
+        return !open.isEmpty();
+    }
+
+    /**
+     * Records that this GUI has changed while nobody was viewing it, without resolving anything. Cached screens of the
+     * GUI are invalidated, and it is fully rendered for its first viewer when it is next opened.
+     */
+    public void markStale() {
+        version++;
+    }
+
+    /**
+     * Gets the players currently viewing this GUI.
+     * @return A copy of the list of viewers.
+     */
+    public List<ServerPlayer> viewers() {
+        List<ServerPlayer> out = new ArrayList<>(open.size());
         for (Menu menu : open) {
-            ServerPlayer player = menu.player;
-            if (player != null) {
-                other.open(player);
+            out.add(menu.player);
+        }
+        return out;
+    }
+
+    /**
+     * Sets a callback to run when the last viewer of this GUI closes it.
+     * @param closeListener The callback, or null.
+     */
+    void setCloseListener(Runnable closeListener) {
+        this.closeListener = closeListener;
+    }
+
+    /**
+     * Sets the logic used to go back to this GUI from a navigation stack, for GUIs which belong to a larger menu.
+     * @param reopenHandler The handler, or null to reopen this GUI directly.
+     */
+    void setReopenHandler(BiConsumer<ServerPlayer, CachedScreen> reopenHandler) {
+        this.reopenHandler = reopenHandler;
+    }
+
+    /**
+     * Opens this GUI for the given player as they last saw it. If the GUI has not changed since the screen was
+     * captured, its cached items are shown instead of being resolved again, aside from bound and refreshing slots.
+     * @param player The player to open the menu for.
+     * @param screen The screen captured when the player navigated away.
+     */
+    void reopen(ServerPlayer player, CachedScreen screen) {
+        open(player, screen.context, screen.version == version ? screen.shown : null);
+    }
+
+    private void onLastViewerClosed() {
+        ViewerTracker.untrack(this);
+        bindings.unlistenAll();
+        if (closeListener != null) {
+            closeListener.run();
+        }
+    }
+
+    @Override
+    public int sweepViewers() {
+        int removed = 0;
+        for (int i = open.size() - 1; i >= 0; i--) {
+            Menu menu = open.get(i);
+            if (menu.isStale()) {
+                open.remove(i);
+                menu.pending = null;
+                menu.scaffolding.release();
+                removed++;
             }
         }
+        if (removed > 0 && open.isEmpty()) {
+            onLastViewerClosed();
+        }
+        return removed;
     }
 
     public void clearRow(int row) {
@@ -160,67 +387,122 @@ public class InventoryMenuImpl implements InventoryMenu {
     }
 
     public void clear(int start, int end) {
-        for (int i = start; i < end; i++) {
-            clearItem(i);
-        }
+        items.clear(start, end);
+        version++;
+    }
+
+    /**
+     * Gets the page index passed to page-aware click events in this GUI.
+     * @return The page index.
+     */
+    public int page() {
+        return page;
+    }
+
+    /**
+     * Sets the page index passed to page-aware click events in this GUI.
+     * @param page The page index.
+     */
+    public void setPage(int page) {
+        this.page = page;
     }
 
     public InventoryMenuImpl copy(Message<Component> title) {
 
-        InventoryMenuImpl other = new InventoryMenuImpl(title, rows(), context);
-        System.arraycopy(items, 0, other.items, 0, size());
-        other.update();
+        // The copy has no viewers yet, so there is nothing to render
+        InventoryMenuImpl other = new InventoryMenuImpl(title, rows(), context, items.share());
+        other.page = page;
+        other.reopenHandler = reopenHandler;
 
         return other;
     }
 
-    private void onClick(int slot, ServerPlayer serverPlayer, ClickType clickType) {
-        Entry ent = items[slot];
-        if (ent == null || ent.event == null)
-            return;
-
-        try {
-            ent.event.execute(serverPlayer, clickType);
-        } catch (Throwable th) {
-            LOGGER.error("Error while executing click event for slot {}", slot, th);
+    private void scheduleRefreshes() {
+        for (int i = 0; i < items.size(); i++) {
+            if (items.refreshInterval(i) > 0) {
+                scheduleRefresh(i);
+            }
         }
     }
 
-    public static InventoryMenuImpl create(Message<Component> title, int size, PipelineContext context) {
+    private void scheduleRefresh(int slot) {
 
-        int rows = size / 9;
-        int partialRows = size % 9;
-        if (rows == 0 || partialRows > 0)
-            rows++;
+        int interval = items.refreshInterval(slot);
+        if (refreshTasks == null) {
+            if (interval == 0)
+                return;
+            refreshTasks = new RefreshScheduler.Task[items.size()];
+        }
 
-        return new InventoryMenuImpl(title, rows, context);
+        RefreshScheduler.Task current = refreshTasks[slot];
+        if (current != null) {
+            if (current.interval == interval && !current.isCancelled())
+                return;
+            current.cancel();
+            refreshTasks[slot] = null;
+        }
+        if (interval > 0) {
+            refreshTasks[slot] = RefreshScheduler.schedule(this, slot, interval);
+        }
     }
 
-    public static class Entry {
-
-        private final ItemSupplier item;
-        private final ClickEvent event;
+    @Override
+    public void cancelRefresh(RefreshScheduler.Task task) {
+        task.cancel();
+        if (refreshTasks != null && refreshTasks[task.slot] == task) {
+            refreshTasks[task.slot] = null;
+        }
+    }
 
-        public Entry(ItemStack item, ClickEvent event) {
-            this.item = pl -> item;
-            this.event = event;
+    @Override
+    public boolean refreshSlot(RefreshScheduler.Task task) {
+        if (task.isCancelled())
+            return false;
+
+        // Pause refreshing while nobody is viewing the menu. The task is rescheduled when the menu is opened again.
+        if (open.isEmpty() || items.refreshInterval(task.slot) != task.interval) {
+            cancelRefresh(task);
+            return false;
         }
 
-        public Entry(ItemSupplier item, ClickEvent event) {
-            this.item = item;
-            this.event = event;
+        for (Menu menu : open) {
+            menu.updateSlot(task.slot);
         }
+        return true;
+    }
 
-        public ItemStack getItem(PipelineContext ctx) {
-            return item.get(ctx);
+    /**
+     * Re-resolves each slot bound to the given value for each viewer.
+     */
+    private void refreshBound(ObservableValue<?> source) {
+        for (int i = 0; i < items.size(); i++) {
+            if (items.source(i) == source) {
+                for (Menu menu : open) {
+                    menu.updateSlot(i);
+                }
+            }
         }
+    }
 
-        public ClickEvent getEvent() {
-            return event;
+    private void onClick(int slot, ServerPlayer serverPlayer, ClickType clickType) {
+        try {
+            items.click(slot, serverPlayer, clickType, page);
+        } catch (Throwable th) {
+            LOGGER.error("Error while executing click event for slot {}", slot, th);
         }
     }
 
-    private static ClickType getActionType(int action, net.minecraft.world.inventory.ClickType type) {
+    public static InventoryMenuImpl create(Message<Component> title, int size, PipelineContext context) {
+
+        int rows = size / 9;
+        int partialRows = size % 9;
+        if (rows == 0 || partialRows > 0)
+            rows++;
+
+        return new InventoryMenuImpl(title, rows, context);
+    }
+
+    static ClickType getActionType(int action, net.minecraft.world.inventory.ClickType type) {
         return switch (type) {
             case PICKUP -> action == 0 ? ClickType.LEFT : ClickType.RIGHT;
             case QUICK_MOVE -> action == 0 ? ClickType.SHIFT_LEFT : ClickType.SHIFT_RIGHT;
@@ -232,47 +514,236 @@ public class InventoryMenuImpl implements InventoryMenu {
         };
     }
 
-    private class Menu extends AbstractContainerMenu {
+    static MenuType<?> getMenuType(int rows) {
+        return switch (rows) {
+            case 1 -> MenuType.GENERIC_9x1;
+            case 2 -> MenuType.GENERIC_9x2;
+            case 3 -> MenuType.GENERIC_9x3;
+            case 4 -> MenuType.GENERIC_9x4;
+            case 5 -> MenuType.GENERIC_9x5;
+            default -> MenuType.GENERIC_9x6;
+        };
+    }
+
+    /**
+     * What a player was shown by a GUI when they navigated away from it.
+     */
+    static final class CachedScreen implements NavigationStack.Screen {
+
+        final InventoryMenuImpl gui;
+        final PipelineContext context;
+        final long version;
+        private ItemStack[] shown;
+
+        private CachedScreen(InventoryMenuImpl gui, PipelineContext context, long version, ItemStack[] shown) {
+            this.gui = gui;
+            this.context = context;
+            this.version = version;
+            this.shown = shown;
+        }
+
+        @Override
+        public void restore(ServerPlayer player) {
+            if (gui.reopenHandler != null) {
+                gui.reopenHandler.accept(player, this);
+            } else {
+                gui.reopen(player, this);
+            }
+        }
+
+        @Override
+        public void forget() {
+            shown = null;
+        }
+    }
+
+    /**
+     * The title and items resolved for the first player of a group opened together.
+     */
+    private static final class SharedOpen {
+        long version = -1;
+        Component title;
+        ItemStack[] items;
+    }
+
+    private class Menu extends AbstractContainerMenu implements RenderQueue.Job, NavigationStack.Capturable {
 
         private final ServerPlayer player;
+        private final PipelineContext openContext;
+        private final RenderMemo memo = new RenderMemo();
         private final PipelineContext ctx;
+        private final MenuScaffolding scaffolding;
+        private BitSet pending;
+        private int cursor;
 
-        Menu(int id, ServerPlayer spl) {
+        Menu(int id, ServerPlayer spl, PipelineContext openContext, ItemStack[] cached) {
             super(getMenuType(InventoryMenuImpl.this.rows()), id);
 
             this.player = spl;
-            this.ctx = context.and(PipelineContext.of(spl));
+            this.openContext = openContext;
+            this.ctx = context.and(openContext).and(PipelineContext.of(spl, memo));
+            this.scaffolding = MenuScaffolding.acquire(InventoryMenuImpl.this.rows());
 
-            Container container = new SimpleContainer(InventoryMenuImpl.this.size());
             int rows = InventoryMenuImpl.this.rows();
+            for (Slot slot : scaffolding.slots) {
+                addSlot(slot);
+            }
+
+            this.addStandardInventorySlots(spl.getInventory(), 8, 18 + rows * 2 + 13);
 
-            for (int row = 0; row < rows; row++) {
-                for (int col = 0; col < 9; col++) {
-                    addSlot(new Slot(container, col + row * 9, 8 + col * 18, 18 + row * 18));
+            // The player's container menu is not set until after the menu is created
+            if (cached != null && cached.length == items.size()) {
+                restore(cached);
+            } else {
+                render(null);
+            }
+        }
+
+        private void restore(ItemStack[] cached) {
+
+            memo.clear();
+            int stateId = incrementStateId();
+            SlotStore items = InventoryMenuImpl.this.items;
+            for (int i = 0; i < items.size(); i++) {
+                ItemStack is;
+                if (items.source(i) == null && items.refreshInterval(i) == 0) {
+                    is = cached[i];
+                } else {
+                    // Bound and refreshing slots may have changed while nobody was listening
+                    is = items.resolve(i, ctx);
                 }
+                setItem(i, stateId, is == null ? ItemStack.EMPTY : is);
             }
+        }
 
-            this.addStandardInventorySlots(spl.getInventory(), 8, 18 + rows * 2 + 13);
-            update();
+        @Override
+        public NavigationStack.Screen capture() {
+            return new CachedScreen(InventoryMenuImpl.this, openContext, version, snapshot());
+        }
+
+        /**
+         * Gets the items currently shown to this menu's player.
+         * @return The items in each slot, or null if some slots are still waiting to be rendered.
+         */
+        private ItemStack[] snapshot() {
+            if (hasPending())
+                return null;
+
+            ItemStack[] out = new ItemStack[items.size()];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = scaffolding.container.getItem(i);
+            }
+            return out;
+        }
+
+        /**
+         * Determines whether this menu can no longer be seen by its player.
+         * @return Whether the player has left or has opened another container.
+         */
+        @Override
+        public boolean isStale() {
+            return player.isRemoved() || player.hasDisconnected() || player.containerMenu != this;
         }
 
         public void update() {
 
-            if (player.isRemoved()) {
+            if (isStale()) {
                 return;
             }
 
+            if (RenderQueue.isLimited()) {
+                markPending(0, items.size());
+            } else {
+                render(null);
+            }
+        }
+
+        /**
+         * Renders every slot, using items which have already been resolved for this viewer where given.
+         * @param resolved Pre-resolved items for each slot, or null to resolve everything here.
+         */
+        private void render(ItemStack[] resolved) {
+
+            if (pending != null) {
+                pending.clear();
+            }
+            if (resolved == null) {
+                memo.clear();
+            }
             int stateId = incrementStateId();
 
-            for (int i = 0; i < InventoryMenuImpl.this.size(); i++) {
-                Entry ent = InventoryMenuImpl.this.items[i];
-                if (ent == null)
-                    continue;
+            SlotStore items = InventoryMenuImpl.this.items;
+            for (int i = 0; i < items.size(); i++) {
+                ItemStack is = resolved != null && resolved[i] != null ? resolved[i] : items.resolve(i, ctx);
+                setItem(i, stateId, is == null ? ItemStack.EMPTY : is);
+            }
+        }
+
+        public void updateSlot(int slot) {
+
+            if (isStale()) {
+                return;
+            }
+
+            if (RenderQueue.isLimited()) {
+                markPending(slot, slot + 1);
+            } else {
+                memo.clear();
+                ItemStack is = InventoryMenuImpl.this.items.resolve(slot, ctx);
+                setItem(slot, incrementStateId(), is == null ? ItemStack.EMPTY : is);
+            }
+        }
+
+        private void markPending(int start, int end) {
+            if (pending == null) {
+                pending = new BitSet(items.size());
+            }
+            pending.set(start, end);
+            RenderQueue.enqueue(InventoryMenuImpl.this, this);
+        }
+
+        @Override
+        public boolean hasPending() {
+            return pending != null && !pending.isEmpty();
+        }
 
-                ItemStack is = ent.getItem(ctx);
-                if (is != null) {
-                    setItem(i, stateId, is);
+        /**
+         * Renders pending slots, continuing from where the last call stopped so frequently updated slots near the
+         * start of the menu cannot starve the rest of it.
+         */
+        @Override
+        public int render(int max) {
+
+            memo.clear();
+            int stateId = incrementStateId();
+            SlotStore items = InventoryMenuImpl.this.items;
+
+            int count = 0;
+            while (count < max) {
+                int slot = pending.nextSetBit(cursor);
+                if (slot == -1) {
+                    slot = pending.nextSetBit(0);
+                    if (slot == -1)
+                        break;
                 }
+
+                pending.clear(slot);
+                cursor = slot + 1;
+
+                ItemStack is = items.resolve(slot, ctx);
+                setItem(slot, stateId, is == null ? ItemStack.EMPTY : is);
+                count++;
+            }
+            return count;
+        }
+
+        /**
+         * Renders all pending slots immediately, so a player who interacts with the menu sees the result of their
+         * click without waiting for the render queue.
+         */
+        private void renderPending() {
+            if (hasPending() && !isStale()) {
+                RenderQueue.charge(render(Integer.MAX_VALUE));
             }
         }
 
@@ -289,29 +760,24 @@ public class InventoryMenuImpl implements InventoryMenu {
         @Override
         public void clicked(int slot, int button, net.minecraft.world.inventory.ClickType clickType, Player player) {
 
-            if (player.level().isClientSide() || slot < 0 || slot >= items.length)
+            if (player.level().isClientSide() || slot < 0 || slot >= items.size())
                 return;
             InventoryMenuImpl.this.onClick(slot, (ServerPlayer) player, getActionType(button, clickType));
+            renderPending();
         }
 
         @Override
         public void removed(Player player) {
-            if (player == this.player) {
-                open.remove(this);
+            // The menu may already have been swept if its player left without closing it
+            if (player == this.player && open.remove(this)) {
+                pending = null;
+                scaffolding.release();
+                if (open.isEmpty()) {
+                    onLastViewerClosed();
+                }
             }
         }
 
-        private static MenuType<?> getMenuType(int rows) {
-            return switch (rows) {
-                case 1 -> MenuType.GENERIC_9x1;
-                case 2 -> MenuType.GENERIC_9x2;
-                case 3 -> MenuType.GENERIC_9x3;
-                case 4 -> MenuType.GENERIC_9x4;
-                case 5 -> MenuType.GENERIC_9x5;
-                default -> MenuType.GENERIC_9x6;
-            };
-        }
-
     }
 
 }
@@ -0,0 +1,27 @@
+package org.wallentines.invmenu.impl;
+
+import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.resource.ResourceManagerHelper;
+import net.minecraft.server.packs.PackType;
+
+public class InventoryMenuInitializer implements ModInitializer {
+
+    @Override
+    public void onInitialize() {
+        ServerTickEvents.END_SERVER_TICK.register(MenuTicker::tick);
+        ServerLifecycleEvents.SERVER_STARTING.register(HeadCache::setServer);
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+            HeadCache.setServer(null);
+            HeadCache.clear();
+            ViewerTracker.clear();
+            RenderQueue.clear();
+            NavigationStack.clear();
+            OpenQueue.clear();
+            RefreshScheduler.clear();
+            MenuTicker.clear();
+        });
+        ResourceManagerHelper.get(PackType.SERVER_DATA).registerReloadListener(MenuDefinitionLoader.ID, MenuDefinitionLoader::new);
+    }
+}
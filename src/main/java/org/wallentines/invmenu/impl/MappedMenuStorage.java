@@ -0,0 +1,323 @@
+package org.wallentines.invmenu.impl;
+
+import com.mojang.serialization.Dynamic;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.minecraft.SharedConstants;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.nbt.Tag;
+import net.minecraft.resources.RegistryOps;
+import net.minecraft.util.datafix.DataFixers;
+import net.minecraft.util.datafix.fixes.References;
+import net.minecraft.world.item.ItemStack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wallentines.invmenu.api.MenuStorage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A menu storage file laid out as a fixed header, a table of (offset, length, data version) records for each slot, and
+ * an append-only data region. Only the header and record table are memory-mapped. Items are stored as NBT, and records
+ * written by an older game version are upgraded with the data fixer when they are read. Changed items are appended on
+ * flush and the old bytes become garbage, which is reclaimed by compacting the file in place once it outweighs the live
+ * data. The file is never replaced while it is mapped.
+ */
+public class MappedMenuStorage implements MenuStorage {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedMenuStorage.class);
+
+    private static final int MAGIC = 0x494D5653;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 20;
+    private static final int RECORD_SIZE = 16;
+    private static final int DEFAULT_CAPACITY = 64;
+    private static final long MIN_COMPACT_GARBAGE = 1 << 20;
+
+    private final Path path;
+    private final RegistryOps<Tag> ops;
+    private final int dataVersion = SharedConstants.getCurrentVersion().dataVersion().version();
+    private final Int2ObjectMap<ItemStack> pending = new Int2ObjectOpenHashMap<>();
+
+    private FileChannel channel;
+    private MappedByteBuffer table;
+    private int capacity;
+    private int size;
+    private long end;
+    private long garbage;
+
+    private MappedMenuStorage(Path path, RegistryAccess registries) {
+        this.path = path;
+        this.ops = registries.createSerializationContext(NbtOps.INSTANCE);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public ItemStack read(int index) {
+        ItemStack stack = pending.get(index);
+        if (stack != null)
+            return stack;
+        if (index < 0 || index >= capacity)
+            return ItemStack.EMPTY;
+
+        int record = recordPosition(index);
+        int length = table.getInt(record + 8);
+        if (length == 0)
+            return ItemStack.EMPTY;
+
+        try {
+            return decode(readBytes(table.getLong(record), length), table.getInt(record + 12));
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to read slot " + index + " from " + path + "!", ex);
+        }
+    }
+
+    @Override
+    public boolean isEmpty(int index) {
+        ItemStack stack = pending.get(index);
+        if (stack != null)
+            return stack.isEmpty();
+
+        return index < 0 || index >= capacity || table.getInt(recordPosition(index) + 8) == 0;
+    }
+
+    @Override
+    public void write(int index, ItemStack itemStack) {
+        if (index < 0)
+            throw new IndexOutOfBoundsException("Attempt to write to negative index " + index + "!");
+
+        pending.put(index, itemStack.copy());
+        size = Math.max(size, index + 1);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (pending.isEmpty())
+            return;
+
+        int maxIndex = size - 1;
+        if (maxIndex >= capacity) {
+            grow(Math.max(capacity * 2, maxIndex + 1));
+        }
+
+        for (Int2ObjectMap.Entry<ItemStack> ent : pending.int2ObjectEntrySet()) {
+            int record = recordPosition(ent.getIntKey());
+            garbage += table.getInt(record + 8);
+
+            ItemStack stack = ent.getValue();
+            if (stack.isEmpty()) {
+                putRecord(record, 0L, 0, 0);
+                continue;
+            }
+
+            byte[] bytes = encode(stack);
+            channel.write(ByteBuffer.wrap(bytes), end);
+            putRecord(record, end, bytes.length, dataVersion);
+            end += bytes.length;
+        }
+        pending.clear();
+
+        table.putInt(12, size);
+        table.putInt(16, dataVersion);
+        channel.force(false);
+        table.force();
+
+        long live = end - dataStart(capacity) - garbage;
+        if (garbage > MIN_COMPACT_GARBAGE && garbage > live) {
+            compact();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private int recordPosition(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    private static long dataStart(int capacity) {
+        return HEADER_SIZE + (long) capacity * RECORD_SIZE;
+    }
+
+    private void putRecord(int record, long offset, int length, int version) {
+        table.putLong(record, offset);
+        table.putInt(record + 8, length);
+        table.putInt(record + 12, version);
+    }
+
+    private byte[] readBytes(long offset, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, offset + buf.position()) < 0)
+                throw new IOException("Menu storage file " + path + " is truncated!");
+        }
+        return buf.array();
+    }
+
+    /**
+     * Grows the record table in place. Items stored where the larger table will be are moved to the end of the file
+     * first, and the capacity in the header is only changed once they have been moved.
+     */
+    private void grow(int newCapacity) throws IOException {
+
+        long newDataStart = dataStart(newCapacity);
+        long covered = Math.min(end, newDataStart) - dataStart(capacity);
+        end = Math.max(end, newDataStart);
+        for (int i = 0; i < capacity; i++) {
+            int record = recordPosition(i);
+            long offset = table.getLong(record);
+            int length = table.getInt(record + 8);
+            if (length == 0 || offset >= newDataStart)
+                continue;
+
+            channel.write(ByteBuffer.wrap(readBytes(offset, length)), end);
+            table.putLong(record, end);
+            garbage += length;
+            end += length;
+        }
+        channel.force(false);
+
+        // The new part of the table may still hold bytes of moved items
+        mapTable(newCapacity);
+        for (int i = capacity; i < newCapacity; i++) {
+            putRecord(recordPosition(i), 0L, 0, 0);
+        }
+        // Everything which was stored in the new part of the table has been moved or was already garbage
+        garbage -= covered;
+        table.putInt(8, newCapacity);
+        table.force();
+        capacity = newCapacity;
+    }
+
+    /**
+     * Drops garbage by moving each live item down to the lowest free offset, in order of offset, then truncating the
+     * file. Each item is copied before its record is changed, and is only ever overwritten by items which come after
+     * it, so every record points at valid bytes if the server stops part way through.
+     */
+    private void compact() throws IOException {
+
+        IntArrayList live = new IntArrayList();
+        for (int i = 0; i < capacity; i++) {
+            if (table.getInt(recordPosition(i) + 8) > 0) {
+                live.add(i);
+            }
+        }
+        live.sort((a, b) -> Long.compare(table.getLong(recordPosition(a)), table.getLong(recordPosition(b))));
+
+        long write = dataStart(capacity);
+        for (int i = 0; i < live.size(); i++) {
+            int record = recordPosition(live.getInt(i));
+            long offset = table.getLong(record);
+            int length = table.getInt(record + 8);
+            if (offset != write) {
+                channel.write(ByteBuffer.wrap(readBytes(offset, length)), write);
+                table.putLong(record, write);
+            }
+            write += length;
+        }
+
+        channel.force(false);
+        table.force();
+        channel.truncate(write);
+        end = write;
+        garbage = 0;
+    }
+
+    private void mapTable(int capacity) throws IOException {
+        table = channel.map(FileChannel.MapMode.READ_WRITE, 0, dataStart(capacity));
+    }
+
+    private void load() throws IOException {
+
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        end = channel.size();
+        if (end < HEADER_SIZE)
+            throw new IOException("Menu storage file " + path + " is truncated!");
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        if (header.getInt(0) != MAGIC)
+            throw new IOException("File " + path + " is not a menu storage file!");
+        if (header.getInt(4) != VERSION)
+            throw new IOException("Unsupported menu storage version " + header.getInt(4) + " in " + path + "!");
+        if (header.getInt(16) > dataVersion)
+            throw new IOException("Menu storage file " + path + " was saved by a newer game version!");
+
+        capacity = header.getInt(8);
+        size = header.getInt(12);
+        if (end < dataStart(capacity))
+            throw new IOException("Menu storage file " + path + " is truncated!");
+
+        mapTable(capacity);
+        long live = 0;
+        for (int i = 0; i < capacity; i++) {
+            live += table.getInt(recordPosition(i) + 8);
+        }
+        garbage = end - dataStart(capacity) - live;
+    }
+
+    private void create() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate((int) dataStart(DEFAULT_CAPACITY));
+        header.putInt(MAGIC).putInt(VERSION).putInt(DEFAULT_CAPACITY).putInt(0).putInt(dataVersion);
+        header.rewind();
+
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            out.write(header, 0);
+        }
+    }
+
+    private byte[] encode(ItemStack stack) throws IOException {
+        Tag tag = ItemStack.OPTIONAL_CODEC.encodeStart(ops, stack).getOrThrow(IOException::new);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DataOutputStream data = new DataOutputStream(out)) {
+            NbtIo.writeAnyTag(tag, data);
+        }
+        return out.toByteArray();
+    }
+
+    private ItemStack decode(byte[] bytes, int version) throws IOException {
+        Tag tag;
+        try (DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            tag = NbtIo.readAnyTag(data, NbtAccounter.unlimitedHeap());
+        }
+        if (version < dataVersion) {
+            tag = DataFixers.getDataFixer().update(References.ITEM_STACK, new Dynamic<>(NbtOps.INSTANCE, tag), version, dataVersion).getValue();
+        }
+        return ItemStack.OPTIONAL_CODEC.parse(ops, tag)
+                .resultOrPartial(err -> LOGGER.error("Unable to decode an item from {}: {}", path, err))
+                .orElse(ItemStack.EMPTY);
+    }
+
+    public static MenuStorage open(Path file, RegistryAccess registries) throws IOException {
+        MappedMenuStorage out = new MappedMenuStorage(file, registries);
+        if (!Files.exists(file) || Files.size(file) == 0) {
+            Files.deleteIfExists(file);
+            out.create();
+        }
+        out.load();
+        return out;
+    }
+
+}
@@ -0,0 +1,95 @@
+package org.wallentines.invmenu.impl;
+
+import net.minecraft.world.item.ItemStack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wallentines.invmenu.api.InventoryMenu;
+import org.wallentines.invmenu.api.PagedInventoryMenu;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+public class MenuBatch<M extends InventoryMenu> implements InventoryMenu.Batch {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MenuBatch.class);
+
+    protected final M menu;
+    private final Queue<Consumer<M>> changes = new ConcurrentLinkedQueue<>();
+
+    public MenuBatch(M menu) {
+        this.menu = menu;
+    }
+
+    protected void queue(Consumer<M> change) {
+        changes.add(change);
+    }
+
+    @Override
+    public void setItem(int index, ItemStack itemStack, InventoryMenu.ClickEvent event) {
+        queue(m -> m.setItem(index, itemStack, event));
+    }
+
+    @Override
+    public void setItem(int index, InventoryMenu.ItemSupplier itemStack, InventoryMenu.ClickEvent event) {
+        queue(m -> m.setItem(index, itemStack, event));
+    }
+
+    @Override
+    public void clearItem(int index) {
+        queue(m -> m.clearItem(index));
+    }
+
+    @Override
+    public void clear() {
+        queue(InventoryMenu::clear);
+    }
+
+    @Override
+    public void commit() {
+
+        List<Consumer<M>> committed = new ArrayList<>(changes.size());
+        Consumer<M> change;
+        while ((change = changes.poll()) != null) {
+            committed.add(change);
+        }
+        if (committed.isEmpty())
+            return;
+
+        MenuTicker.submit(() -> {
+            for (Consumer<M> c : committed) {
+                try {
+                    c.accept(menu);
+                } catch (Throwable th) {
+                    LOGGER.error("Error while applying a batched menu change", th);
+                }
+            }
+            menu.update();
+        });
+    }
+
+    public static class Paged extends MenuBatch<PagedInventoryMenu> implements PagedInventoryMenu.PagedBatch {
+
+        public Paged(PagedInventoryMenu menu) {
+            super(menu);
+        }
+
+        @Override
+        public void setItem(int index, ItemStack itemStack, PagedInventoryMenu.PagedClickEvent event) {
+            queue(m -> m.setItem(index, itemStack, event));
+        }
+
+        @Override
+        public void setItem(int index, InventoryMenu.ItemSupplier itemStack, PagedInventoryMenu.PagedClickEvent event) {
+            queue(m -> m.setItem(index, itemStack, event));
+        }
+
+        @Override
+        public void resize(int max) {
+            queue(m -> m.resize(max));
+        }
+    }
+
+}
@@ -0,0 +1,207 @@
+package org.wallentines.invmenu.impl;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.mojang.serialization.DynamicOps;
+import com.mojang.serialization.JsonOps;
+import net.fabricmc.fabric.api.resource.IdentifiableResourceReloadListener;
+import net.minecraft.core.HolderLookup;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.FileToIdConverter;
+import net.minecraft.resources.Identifier;
+import net.minecraft.server.packs.resources.Resource;
+import net.minecraft.server.packs.resources.ResourceManager;
+import net.minecraft.server.packs.resources.SimplePreparableReloadListener;
+import net.minecraft.util.GsonHelper;
+import net.minecraft.util.profiling.ProfilerFiller;
+import net.minecraft.world.item.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wallentines.invmenu.api.InventoryMenu;
+import org.wallentines.invmenu.api.MenuTemplate;
+import org.wallentines.invmenu.api.PagedInventoryMenu;
+import org.wallentines.pseudonym.Message;
+import org.wallentines.pseudonym.MessagePipeline;
+import org.wallentines.pseudonym.PartialMessage;
+import org.wallentines.pseudonym.PlaceholderManager;
+import org.wallentines.pseudonym.mc.api.ServerPlaceholders;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Loads menu definitions from datapacks. Definitions are parsed and compiled into immutable templates off of the
+ * server thread, then swapped in all at once when the reload is applied.
+ */
+public class MenuDefinitionLoader extends SimplePreparableReloadListener<Map<Identifier, MenuTemplateImpl>> implements IdentifiableResourceReloadListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MenuDefinitionLoader.class);
+
+    public static final Identifier ID = Identifier.fromNamespaceAndPath("invmenu", "menus");
+    private static final FileToIdConverter CONVERTER = FileToIdConverter.json("menu");
+
+    private static volatile Map<Identifier, MenuTemplateImpl> templates = Map.of();
+    private static volatile PlaceholderManager placeholders = new PlaceholderManager();
+
+    private final HolderLookup.Provider registries;
+
+    public MenuDefinitionLoader(HolderLookup.Provider registries) {
+        this.registries = registries;
+    }
+
+    public static Optional<MenuTemplate> get(Identifier id) {
+        return Optional.ofNullable(templates.get(id));
+    }
+
+    public static void setPlaceholderManager(PlaceholderManager manager) {
+        placeholders = manager;
+    }
+
+    @Override
+    public Identifier getFabricId() {
+        return ID;
+    }
+
+    @Override
+    protected @NotNull Map<Identifier, MenuTemplateImpl> prepare(ResourceManager resourceManager, ProfilerFiller profiler) {
+
+        Compiler compiler = new Compiler(MessagePipeline.parser(placeholders), registries.createSerializationContext(JsonOps.INSTANCE), new HashMap<>());
+        Map<Identifier, MenuTemplateImpl> out = new HashMap<>();
+
+        for (Map.Entry<Identifier, Resource> ent : CONVERTER.listMatchingResources(resourceManager).entrySet()) {
+            Identifier id = CONVERTER.fileToId(ent.getKey());
+            try (Reader reader = ent.getValue().openAsReader()) {
+                JsonObject obj = GsonHelper.convertToJsonObject(JsonParser.parseReader(reader), "menu");
+                out.put(id, compiler.compile(id, obj));
+            } catch (Exception ex) {
+                LOGGER.error("Unable to load menu definition {}!", id, ex);
+            }
+        }
+
+        return Map.copyOf(out);
+    }
+
+    @Override
+    protected void apply(Map<Identifier, MenuTemplateImpl> loaded, ResourceManager resourceManager, ProfilerFiller profiler) {
+        Map<Identifier, MenuTemplateImpl> old = templates;
+        templates = loaded;
+
+        // Players viewing a shared menu are moved to its new definition, or closed if it was removed
+        for (MenuTemplateImpl tmp : old.values()) {
+            tmp.retire(loaded.get(tmp.id()));
+        }
+        LOGGER.info("Loaded {} menu definitions", loaded.size());
+    }
+
+    private record Compiler(MessagePipeline<String, PartialMessage<String>> parser, DynamicOps<JsonElement> ops,
+                            Map<String, Message<Component>> messages) {
+
+        MenuTemplateImpl compile(Identifier id, JsonObject obj) {
+
+            Message<Component> title = message(GsonHelper.getAsString(obj, "title"));
+            String type = GsonHelper.getAsString(obj, "type", "single");
+            int size = GsonHelper.getAsInt(obj, "size", 0);
+
+            List<MenuTemplateImpl.SlotDefinition> items = new ArrayList<>();
+            for (JsonElement ele : GsonHelper.getAsJsonArray(obj, "items", new JsonArray())) {
+                items.add(slot(GsonHelper.convertToJsonObject(ele, "item")));
+            }
+
+            return switch (type) {
+                case "single" -> {
+                    if (size < 0 || size > 54 || MenuTemplateImpl.lastSlot(items) >= 54) {
+                        throw new JsonParseException("Single menu " + id + " must fit in slots 0-53!");
+                    }
+                    yield new MenuTemplateImpl(id, title, size, null, List.of(), List.of(), items);
+                }
+                case "paged" -> new MenuTemplateImpl(id, title, size,
+                        sizeProvider(GsonHelper.getAsJsonObject(obj, "page_size")),
+                        rows(obj, "top_rows"),
+                        rows(obj, "bottom_rows"),
+                        items);
+                default -> throw new JsonParseException("Unknown menu type " + type + "!");
+            };
+        }
+
+        PagedInventoryMenu.SizeProvider sizeProvider(JsonObject obj) {
+            String type = GsonHelper.getAsString(obj, "type");
+            int rows = GsonHelper.getAsInt(obj, "rows");
+            return switch (type) {
+                case "fixed" -> PagedInventoryMenu.SizeProvider.fixed(rows);
+                case "dynamic" -> PagedInventoryMenu.SizeProvider.dynamic(rows);
+                default -> throw new JsonParseException("Unknown page size type " + type + "!");
+            };
+        }
+
+        List<PagedInventoryMenu.RowProvider> rows(JsonObject obj, String key) {
+            List<PagedInventoryMenu.RowProvider> out = new ArrayList<>();
+            for (JsonElement ele : GsonHelper.getAsJsonArray(obj, key, new JsonArray())) {
+                JsonObject row = GsonHelper.convertToJsonObject(ele, "row");
+                String type = GsonHelper.getAsString(row, "type");
+                switch (type) {
+                    case "page_controls" -> out.add(PagedInventoryMenu.RowProvider.pageControls(
+                            slot(GsonHelper.getAsJsonObject(row, "next")).supplier(),
+                            slot(GsonHelper.getAsJsonObject(row, "previous")).supplier()));
+                    case "items" -> {
+                        List<MenuTemplateImpl.SlotDefinition> items = new ArrayList<>();
+                        for (JsonElement item : GsonHelper.getAsJsonArray(row, "items")) {
+                            MenuTemplateImpl.SlotDefinition def = slot(GsonHelper.convertToJsonObject(item, "item"));
+                            if (def.slot() < 0 || def.slot() > 8) {
+                                throw new JsonParseException("Reserved row items must be in slots 0-8!");
+                            }
+                            items.add(def);
+                        }
+                        out.add(new MenuTemplateImpl.StaticRow(List.copyOf(items)));
+                    }
+                    default -> throw new JsonParseException("Unknown row type " + type + "!");
+                }
+            }
+            return List.copyOf(out);
+        }
+
+        MenuTemplateImpl.SlotDefinition slot(JsonObject obj) {
+
+            ItemStack item = ItemStack.CODEC.parse(ops, GsonHelper.getAsJsonObject(obj, "item"))
+                    .getOrThrow(JsonParseException::new);
+
+            Message<Component> name = obj.has("name") ? message(GsonHelper.getAsString(obj, "name")) : null;
+            List<Message<Component>> lore = new ArrayList<>();
+            for (JsonElement ele : GsonHelper.getAsJsonArray(obj, "lore", new JsonArray())) {
+                lore.add(message(GsonHelper.convertToString(ele, "lore")));
+            }
+
+            int slot = GsonHelper.getAsInt(obj, "slot", -1);
+            if (slot < -1) {
+                throw new JsonParseException("Invalid slot " + slot + "!");
+            }
+
+            String open = GsonHelper.getAsString(obj, "open", null);
+            return new MenuTemplateImpl.SlotDefinition(
+                    slot,
+                    item,
+                    name,
+                    List.copyOf(lore),
+                    GsonHelper.getAsString(obj, "command", null),
+                    open == null ? null : Identifier.parse(open),
+                    GsonHelper.getAsBoolean(obj, "close", false));
+        }
+
+        /**
+         * Parses a message, reusing the same message for identical strings so it is only resolved once per render pass.
+         * @see org.wallentines.invmenu.api.RenderMemo#resolve(Message, org.wallentines.pseudonym.PipelineContext)
+         */
+        Message<Component> message(String str) {
+            return messages.computeIfAbsent(str, s -> Message.forPipeline(parser.accept(s), ServerPlaceholders.COMPONENT_RESOLVER));
+        }
+
+    }
+
+}
@@ -0,0 +1,76 @@
+package org.wallentines.invmenu.impl;
+
+import net.minecraft.world.SimpleContainer;
+import net.minecraft.world.inventory.Slot;
+
+import java.util.ArrayDeque;
+
+/**
+ * The container and menu slots backing an open inventory menu. Scaffolding only depends on the number of rows in a
+ * menu, so it is pooled per row count and reused when menus are closed and reopened.
+ */
+final class MenuScaffolding {
+
+    private static final int MAX_ROWS = 6;
+    private static final int MAX_POOLED = 32;
+
+    @SuppressWarnings("unchecked")
+    private static final ArrayDeque<MenuScaffolding>[] POOL = new ArrayDeque[MAX_ROWS];
+
+    static {
+        for (int i = 0; i < MAX_ROWS; i++) {
+            POOL[i] = new ArrayDeque<>();
+        }
+    }
+
+    final int rows;
+    final SimpleContainer container;
+    final Slot[] slots;
+    private boolean inUse;
+
+    private MenuScaffolding(int rows) {
+        this.rows = rows;
+        this.container = new SimpleContainer(rows * 9);
+        this.slots = new Slot[rows * 9];
+
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < 9; col++) {
+                int index = col + row * 9;
+                slots[index] = new Slot(container, index, 8 + col * 18, 18 + row * 18);
+            }
+        }
+    }
+
+    /**
+     * Takes scaffolding for a menu with the given number of rows from the pool, or creates it if none is available.
+     * Should only be called from the server thread.
+     * @param rows The number of rows in the menu.
+     * @return Empty scaffolding for the menu.
+     */
+    static MenuScaffolding acquire(int rows) {
+        MenuScaffolding out = rows > 0 && rows <= MAX_ROWS ? POOL[rows - 1].poll() : null;
+        if (out == null) {
+            out = new MenuScaffolding(rows);
+        }
+        out.inUse = true;
+        return out;
+    }
+
+    /**
+     * Clears this scaffolding and returns it to the pool. Does nothing if it has already been released.
+     */
+    void release() {
+        if (!inUse)
+            return;
+        inUse = false;
+
+        container.clearContent();
+        if (rows > 0 && rows <= MAX_ROWS) {
+            ArrayDeque<MenuScaffolding> pool = POOL[rows - 1];
+            if (pool.size() < MAX_POOLED) {
+                pool.push(this);
+            }
+        }
+    }
+
+}
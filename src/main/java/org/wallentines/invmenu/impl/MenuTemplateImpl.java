@@ -0,0 +1,220 @@
+package org.wallentines.invmenu.impl;
+
+import net.minecraft.core.component.DataComponents;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.Identifier;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.component.ItemLore;
+import org.wallentines.invmenu.api.InventoryMenu;
+import org.wallentines.invmenu.api.MenuTemplate;
+import org.wallentines.invmenu.api.PagedInventoryMenu;
+import org.wallentines.invmenu.api.RenderMemo;
+import org.wallentines.pseudonym.Message;
+import org.wallentines.pseudonym.PipelineContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MenuTemplateImpl implements MenuTemplate {
+
+    private final Identifier id;
+    private final Message<Component> title;
+    private final int size;
+    private final PagedInventoryMenu.SizeProvider sizeProvider;
+    private final List<PagedInventoryMenu.RowProvider> topRows;
+    private final List<PagedInventoryMenu.RowProvider> bottomRows;
+    private final List<SlotDefinition> items;
+
+    private InventoryMenu menu;
+    private InventoryMenuImpl prototype;
+
+    public MenuTemplateImpl(Identifier id,
+                            Message<Component> title,
+                            int size,
+                            PagedInventoryMenu.SizeProvider sizeProvider,
+                            List<PagedInventoryMenu.RowProvider> topRows,
+                            List<PagedInventoryMenu.RowProvider> bottomRows,
+                            List<SlotDefinition> items) {
+        this.id = id;
+        this.title = title;
+        this.size = size;
+        this.sizeProvider = sizeProvider;
+        this.topRows = topRows;
+        this.bottomRows = bottomRows;
+        this.items = List.copyOf(items);
+    }
+
+    @Override
+    public Identifier id() {
+        return id;
+    }
+
+    @Override
+    public InventoryMenu menu() {
+        if (menu == null) {
+            menu = create();
+        }
+        return menu;
+    }
+
+    @Override
+    public InventoryMenu create() {
+
+        if (sizeProvider == null) {
+            // Single-page menus are copied from a prototype which is never opened, so they share its slots until changed
+            if (prototype == null) {
+                int maxSlot = Math.max(size, lastSlot(items) + 1);
+                prototype = InventoryMenuImpl.create(title, maxSlot, PipelineContext.EMPTY);
+                fill(prototype);
+            }
+            return prototype.copy(title);
+        }
+
+        PagedInventoryMenu out = PagedInventoryMenu.create(title, sizeProvider, size);
+        for (PagedInventoryMenu.RowProvider row : topRows) {
+            out.addTopReservedRow(row);
+        }
+        for (PagedInventoryMenu.RowProvider row : bottomRows) {
+            out.addBottomReservedRow(row);
+        }
+        fill(out);
+        return out;
+    }
+
+    /**
+     * Closes the shared menu built from this template after it has been replaced by a reload. Its viewers are moved to
+     * the replacement's shared menu, if there is one.
+     * @param replacement The template loaded in place of this one, or null if it was removed.
+     */
+    void retire(MenuTemplateImpl replacement) {
+        if (menu == null)
+            return;
+
+        if (replacement != null) {
+            menu.moveViewers(replacement.menu());
+        }
+        menu.closeAll();
+        menu = null;
+        prototype = null;
+    }
+
+    /**
+     * Finds the highest slot index used by the given slot definitions.
+     * @param items The slot definitions, in order.
+     * @return The highest slot index, or -1 if there are no definitions.
+     */
+    static int lastSlot(List<SlotDefinition> items) {
+        int last = -1;
+        int next = 0;
+        for (SlotDefinition def : items) {
+            int index = def.slot == -1 ? next : def.slot;
+            last = Math.max(last, index);
+            next = index + 1;
+        }
+        return last;
+    }
+
+    private void fill(InventoryMenu menu) {
+        int next = 0;
+        for (SlotDefinition def : items) {
+            int index = def.slot == -1 ? next : def.slot;
+            def.apply(menu, index);
+            next = index + 1;
+        }
+    }
+
+    /**
+     * A single compiled item in a menu definition.
+     * @param slot The slot index, or -1 to place the item in the slot after the previous item.
+     * @param item The base item.
+     * @param name A pre-parsed name to apply to the item for each player, or null.
+     * @param lore Pre-parsed lore lines to apply to the item for each player.
+     * @param command A command to run as the player when the item is clicked, or null.
+     * @param open The ID of a menu template to open when the item is clicked, or null.
+     * @param close Whether to close the menu when the item is clicked.
+     * @param event The click event compiled from the command, open and close actions, or null if there are none.
+     */
+    public record SlotDefinition(int slot, ItemStack item, Message<Component> name, List<Message<Component>> lore,
+                                 String command, Identifier open, boolean close, InventoryMenu.ClickEvent event) {
+
+        public SlotDefinition(int slot, ItemStack item, Message<Component> name, List<Message<Component>> lore,
+                              String command, Identifier open, boolean close) {
+            this(slot, item, name, lore, command, open, close, compileEvent(command, open, close));
+        }
+
+        boolean isStatic() {
+            return name == null && lore.isEmpty();
+        }
+
+        ItemStack resolve(PipelineContext ctx) {
+            ItemStack out = item.copy();
+            if (name != null) {
+                out.set(DataComponents.ITEM_NAME, RenderMemo.resolve(name, ctx));
+            }
+            if (!lore.isEmpty()) {
+                List<Component> lines = new ArrayList<>(lore.size());
+                for (Message<Component> line : lore) {
+                    lines.add(RenderMemo.resolve(line, ctx));
+                }
+                out.set(DataComponents.LORE, new ItemLore(lines));
+            }
+            return out;
+        }
+
+        InventoryMenu.ItemSupplier supplier() {
+            return isStatic() ? ctx -> item : this::resolve;
+        }
+
+        private static InventoryMenu.ClickEvent compileEvent(String command, Identifier open, boolean close) {
+            if (command == null && open == null && !close)
+                return null;
+
+            return (player, type) -> {
+                if (command != null) {
+                    runCommand(player, command);
+                }
+                if (open != null) {
+                    MenuTemplate.get(open).ifPresent(tmp -> tmp.open(player));
+                } else if (close) {
+                    player.closeContainer();
+                }
+            };
+        }
+
+        PagedInventoryMenu.PagedClickEvent pagedEvent() {
+            return event == null ? null : (player, type, page) -> event.execute(player, type);
+        }
+
+        void apply(InventoryMenu menu, int index) {
+            if (isStatic()) {
+                menu.setItem(index, item, event);
+            } else {
+                menu.setItem(index, supplier(), event);
+            }
+        }
+
+        private static void runCommand(ServerPlayer player, String command) {
+            player.level().getServer().getCommands().performPrefixedCommand(player.createCommandSourceStack(), command);
+        }
+    }
+
+    /**
+     * A reserved row filled with the same items on every page.
+     */
+    public record StaticRow(List<SlotDefinition> items) implements PagedInventoryMenu.RowProvider {
+
+        @Override
+        public void fillRow(int page, PagedInventoryMenu.Row row, PagedInventoryMenu menu) {
+            for (SlotDefinition def : items) {
+                row.setItem(def.slot(), def.supplier(), def.pagedEvent());
+            }
+        }
+
+        @Override
+        public long renderKey(int page, int pageCount) {
+            return 0;
+        }
+    }
+
+}
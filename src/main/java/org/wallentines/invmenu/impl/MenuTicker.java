@@ -0,0 +1,57 @@
+package org.wallentines.invmenu.impl;
+
+import net.minecraft.server.MinecraftServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Runs menu work on the server thread at the end of each server tick.
+ */
+public final class MenuTicker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MenuTicker.class);
+
+    private static final Queue<Runnable> TASKS = new ConcurrentLinkedQueue<>();
+
+    private MenuTicker() { }
+
+    /**
+     * Schedules a task to run on the server thread at the end of the current or next tick. May be called from any
+     * thread.
+     * @param task The task to run.
+     */
+    public static void submit(Runnable task) {
+        TASKS.add(task);
+    }
+
+    static void tick(MinecraftServer server) {
+
+        // Only run the tasks which were queued before this tick, so tasks which submit more tasks cannot stall it.
+        int count = TASKS.size();
+        for (int i = 0; i < count; i++) {
+            Runnable task = TASKS.poll();
+            if (task == null)
+                break;
+
+            try {
+                task.run();
+            } catch (Throwable th) {
+                LOGGER.error("Error while running a scheduled menu task", th);
+            }
+        }
+
+        ViewerTracker.tick();
+        NavigationStack.tick();
+        RefreshScheduler.tick();
+        RenderQueue.tick();
+        OpenQueue.tick();
+    }
+
+    static void clear() {
+        TASKS.clear();
+    }
+
+}
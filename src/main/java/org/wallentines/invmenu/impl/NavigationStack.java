@@ -0,0 +1,153 @@
+package org.wallentines.invmenu.impl;
+
+import net.minecraft.server.level.ServerPlayer;
+import org.wallentines.invmenu.api.InventoryMenu;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Remembers the menus each player has navigated through, so they can go back to them. The most recent screens keep
+ * what their viewer was shown, so going back does not resolve their items again unless the menu has changed. Should
+ * only be used from the server thread, except for the setters.
+ */
+public final class NavigationStack {
+
+    private static final int SWEEP_INTERVAL = 20;
+
+    private static final Map<UUID, Stack> STACKS = new HashMap<>();
+    private static volatile int maxDepth = 16;
+    private static volatile int cacheTicks = 6000;
+    private static long ticks;
+
+    private NavigationStack() { }
+
+    public static void setMaxDepth(int depth) {
+        maxDepth = Math.max(1, depth);
+    }
+
+    public static void setCacheTime(int ticks) {
+        cacheTicks = Math.max(0, ticks);
+    }
+
+    /**
+     * Remembers the menu the given player is currently viewing. Does nothing if they are not viewing an inventory menu.
+     * @param player The player.
+     */
+    public static void push(ServerPlayer player) {
+        if (!(player.containerMenu instanceof Capturable menu))
+            return;
+
+        Stack stack = STACKS.computeIfAbsent(player.getUUID(), k -> new Stack());
+        stack.player = player;
+        stack.entries.push(new Entry(menu.capture(), ticks));
+        while (stack.entries.size() > maxDepth) {
+            stack.entries.removeLast();
+        }
+    }
+
+    public static void open(ServerPlayer player, InventoryMenu menu) {
+        push(player);
+        menu.open(player);
+    }
+
+    /**
+     * Reopens the last menu remembered for the given player.
+     * @param player The player.
+     * @return Whether there was a menu to go back to.
+     */
+    public static boolean back(ServerPlayer player) {
+        Stack stack = STACKS.get(player.getUUID());
+        if (stack == null)
+            return false;
+
+        Entry entry = stack.entries.poll();
+        if (stack.entries.isEmpty()) {
+            STACKS.remove(player.getUUID());
+        }
+        if (entry == null)
+            return false;
+
+        if (ticks - entry.time > cacheTicks) {
+            entry.screen.forget();
+        }
+        entry.screen.restore(player);
+        return true;
+    }
+
+    public static void clear(ServerPlayer player) {
+        STACKS.remove(player.getUUID());
+    }
+
+    public static int depth(ServerPlayer player) {
+        Stack stack = STACKS.get(player.getUUID());
+        return stack == null ? 0 : stack.entries.size();
+    }
+
+    /**
+     * Drops the stacks of players who have left, and the cached items of screens which have been remembered for too
+     * long.
+     */
+    static void tick() {
+        if (++ticks % SWEEP_INTERVAL != 0)
+            return;
+
+        Iterator<Stack> it = STACKS.values().iterator();
+        while (it.hasNext()) {
+            Stack stack = it.next();
+            if (stack.player.hasDisconnected()) {
+                it.remove();
+                continue;
+            }
+            for (Entry entry : stack.entries) {
+                if (ticks - entry.time > cacheTicks) {
+                    entry.screen.forget();
+                }
+            }
+        }
+    }
+
+    static void clear() {
+        STACKS.clear();
+    }
+
+    /**
+     * A menu which can remember what it is showing its viewer.
+     */
+    interface Capturable {
+
+        /**
+         * Captures what this menu is showing its viewer.
+         * @return A screen which can reopen the menu as it is now.
+         */
+        Screen capture();
+    }
+
+    /**
+     * A menu as it was shown to a player.
+     */
+    interface Screen {
+
+        /**
+         * Opens the menu for the given player again, from cache if it is still valid.
+         * @param player The player.
+         */
+        void restore(ServerPlayer player);
+
+        /**
+         * Drops any cached items, so the menu will be resolved again when it is restored.
+         */
+        void forget();
+    }
+
+    private record Entry(Screen screen, long time) { }
+
+    private static class Stack {
+        ServerPlayer player;
+        final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    }
+
+}
@@ -0,0 +1,63 @@
+package org.wallentines.invmenu.impl;
+
+import net.minecraft.server.level.ServerPlayer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Opens menus for many players over several ticks, so that opening a menu for a whole server at once does not send
+ * every window in the same tick. Should only be used from the server thread, except for the setter.
+ */
+public final class OpenQueue {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OpenQueue.class);
+
+    private static final ArrayDeque<Runnable> QUEUE = new ArrayDeque<>();
+    private static volatile int maxPerTick = 16;
+
+    private OpenQueue() { }
+
+    public static void setMaxPerTick(int opens) {
+        maxPerTick = Math.max(1, opens);
+    }
+
+    /**
+     * Queues a menu to be opened for each of the given players, in order. Players who have left by the time their turn
+     * comes are skipped.
+     * @param players The players to open the menu for.
+     * @param opener Some logic to open the menu for a single player.
+     */
+    public static void submit(Collection<ServerPlayer> players, Consumer<ServerPlayer> opener) {
+        for (ServerPlayer player : players) {
+            QUEUE.add(() -> {
+                if (!player.isRemoved() && !player.hasDisconnected()) {
+                    opener.accept(player);
+                }
+            });
+        }
+    }
+
+    static void tick() {
+        int count = maxPerTick;
+        for (int i = 0; i < count; i++) {
+            Runnable task = QUEUE.poll();
+            if (task == null)
+                break;
+
+            try {
+                task.run();
+            } catch (Throwable th) {
+                LOGGER.error("Error while opening a queued menu", th);
+            }
+        }
+    }
+
+    static void clear() {
+        QUEUE.clear();
+    }
+
+}
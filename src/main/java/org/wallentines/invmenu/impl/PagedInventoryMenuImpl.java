@@ -1,28 +1,57 @@
 package org.wallentines.invmenu.impl;
 
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import net.minecraft.network.chat.Component;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.item.ItemStack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.wallentines.invmenu.api.InventoryMenu;
+import org.wallentines.invmenu.api.MenuStorage;
+import org.wallentines.invmenu.api.ObservableValue;
 import org.wallentines.invmenu.api.PagedInventoryMenu;
 import org.wallentines.pseudonym.Message;
 import org.wallentines.pseudonym.PipelineContext;
 import org.wallentines.pseudonym.Placeholder;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.BiConsumer;
 
 public class PagedInventoryMenuImpl implements PagedInventoryMenu {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(PagedInventoryMenuImpl.class);
+
+    // Items written straight to storage are held by the storage until it is flushed
+    private static final int MAX_UNFLUSHED_WRITES = 1024;
+
     private final Message<Component> title;
     private final PagedInventoryMenu.SizeProvider sizeProvider;
     private final PipelineContext context;
     private final List<RowProvider> topReserved = new ArrayList<>();
     private final List<RowProvider> bottomReserved = new ArrayList<>();
     private List<Page> pages = new ArrayList<>();
+    private final SearchIndex searchIndex = new SearchIndex();
+    private final Map<RowProvider, Long2ObjectMap<SlotStore>> reservedRenders = new IdentityHashMap<>();
+    private final BiConsumer<ServerPlayer, InventoryMenuImpl.CachedScreen> reopenHandler = this::reopen;
 
     private int rows;
+    private int dirtyFrom = Integer.MAX_VALUE;
+    private int dirtyTo = -1;
+
+    private MenuStorage storage;
+    private IndexedClickEvent storageEvent;
+    private final BitSet loadedPages = new BitSet();
+    private final BitSet unsavedPages = new BitSet();
+    private int unflushedWrites;
 
     protected PagedInventoryMenuImpl(Message<Component> title, SizeProvider sizeProvider, int rows, PipelineContext context) {
         this.title = title;
@@ -34,6 +63,8 @@ public class PagedInventoryMenuImpl implements PagedInventoryMenu {
     @Override
     public void open(ServerPlayer player, int page) {
         Page p = pages.get(page);
+        ensureLoaded(p);
+        ensureReserved(p);
 
         PipelineContext ctx = PipelineContext.builder(player, this)
                 .withContextPlaceholder("gui_page", String.valueOf(page + 1))
@@ -63,32 +94,299 @@ public class PagedInventoryMenuImpl implements PagedInventoryMenu {
 
     @Override
     public void setItem(int index, ItemStack itemStack, ClickEvent event) {
-        setItem(index, pl -> itemStack, event);
+        checkStorable(null, event);
+        if(writeThrough(index, itemStack)) return;
+        Page p = getPageForEdit(index);
+        int topOffset = topReserved.size() * 9;
+        p.gui.setItem(topOffset + index - p.offset, itemStack, event);
     }
 
     @Override
     public void setItem(int index, ItemSupplier itemStack, ClickEvent event) {
-        Page p = updateAndGetPage(index);
+        checkStorable(itemStack, event);
+        if(writeThrough(index, ItemStack.EMPTY)) return;
+        Page p = getPageForEdit(index);
         int topOffset = topReserved.size() * 9;
         p.gui.setItem(topOffset + index - p.offset, itemStack, event);
     }
 
     @Override
     public void setItem(int index, ItemStack itemStack, PagedClickEvent event) {
-        setItem(index, pl -> itemStack, event);
+        checkStorable(null, event);
+        if(writeThrough(index, itemStack)) return;
+        Page p = getPageForEdit(index);
+        int topOffset = topReserved.size() * 9;
+        p.gui.setItem(topOffset + index - p.offset, itemStack, event);
     }
 
     @Override
     public void setItem(int index, ItemSupplier itemStack, PagedClickEvent event) {
-        Page p = updateAndGetPage(index);
+        checkStorable(itemStack, event);
+        if(writeThrough(index, ItemStack.EMPTY)) return;
+        Page p = getPageForEdit(index);
         int topOffset = topReserved.size() * 9;
-        p.gui.setItem(topOffset + index - p.offset, itemStack, (player, type) -> event.execute(player, type, p.index));
+        p.gui.setItem(topOffset + index - p.offset, itemStack, event);
+    }
+
+    @Override
+    public void insert(int index, ItemStack itemStack, ClickEvent event) {
+        checkStorable(null, event);
+        getPageForEdit(makeRoom(index)).gui.setItem(localIndex(index), itemStack, event);
+        updateDirty();
+    }
+
+    @Override
+    public void insert(int index, ItemSupplier itemStack, ClickEvent event) {
+        checkStorable(itemStack, event);
+        getPageForEdit(makeRoom(index)).gui.setItem(localIndex(index), itemStack, event);
+        updateDirty();
+    }
+
+    @Override
+    public void insert(int index, ItemStack itemStack, PagedClickEvent event) {
+        checkStorable(null, event);
+        getPageForEdit(makeRoom(index)).gui.setItem(localIndex(index), itemStack, event);
+        updateDirty();
+    }
+
+    @Override
+    public void insert(int index, ItemSupplier itemStack, PagedClickEvent event) {
+        checkStorable(itemStack, event);
+        getPageForEdit(makeRoom(index)).gui.setItem(localIndex(index), itemStack, event);
+        updateDirty();
+    }
+
+    /**
+     * Opens an empty slot at the given index for an insertion, shifting any items at or after it forward.
+     * @return The index.
+     */
+    private int makeRoom(int index) {
+        int end = contentEnd();
+        if(index < end) {
+            resize(end);
+            shiftForward(index, end);
+        } else {
+            resize(index);
+        }
+        markDirty(index);
+        return index;
+    }
+
+    @Override
+    public void remove(int index) {
+        int end = contentEnd();
+        if(index >= end) return;
+
+        shiftBackward(index, end - 1);
+
+        shrinkToFit();
+        updateDirty();
+    }
+
+    @Override
+    public void compact() {
+
+        int end = contentEnd();
+        int topOffset = topReserved.size() * 9;
+
+        // Copy each run of items back over the gaps before it
+        int write = 0;
+        int read = 0;
+        while(read < end) {
+            Page src = getPage(read);
+            if(isEmpty(src, read)) {
+                read++;
+                continue;
+            }
+
+            int runEnd = read + 1;
+            int pageEnd = Math.min(end, src.offset + src.size);
+            while(runEnd < pageEnd && !isEmpty(src, runEnd)) {
+                runEnd++;
+            }
+
+            if(write != read) {
+                copyRange(read, write, runEnd - read);
+                for(int i = read ; i < runEnd ; i++) {
+                    searchIndex.move(i, write + i - read);
+                }
+            }
+            write += runEnd - read;
+            read = runEnd;
+        }
+
+        for(int i = write ; i < end ; i++) {
+            Page p = getPage(i);
+            ensureLoaded(p);
+            p.gui.clearItem(topOffset + i - p.offset);
+            markDirty(p);
+        }
+
+        shrinkToFit();
+        updateDirty();
+    }
+
+    /**
+     * Copies a range of items to a lower index, splitting the copy at page boundaries.
+     */
+    private void copyRange(int from, int to, int length) {
+
+        int topOffset = topReserved.size() * 9;
+        while(length > 0) {
+            Page src = getPage(from);
+            Page dst = getPage(to);
+            ensureLoaded(src);
+            ensureLoaded(dst);
+
+            int count = Math.min(length, Math.min(src.offset + src.size - from, dst.offset + dst.size - to));
+            SlotStore.copy(src.gui.items, topOffset + from - src.offset, dst.gui.items, topOffset + to - dst.offset, count);
+            markDirty(dst);
+
+            // The source slots are overwritten or cleared later in the compaction, so the source page is unloaded too
+            markDirty(src);
+
+            from += count;
+            to += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Gets the index after the last item in the content area of this menu.
+     * @return The number of slots up to and including the last item.
+     */
+    private int contentEnd() {
+        for(int i = pages.size() - 1 ; i >= 0 ; i--) {
+            Page p = pages.get(i);
+            for(int j = p.size - 1 ; j >= 0 ; j--) {
+                if(!isEmpty(p, p.offset + j)) {
+                    return p.offset + j + 1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Determines whether the given index is empty. Pages which are not loaded are checked in storage one item at a
+     * time, so scanning the menu does not keep every page in memory.
+     * @param p The page holding the index.
+     * @param index The index in the content area of the menu.
+     */
+    private boolean isEmpty(Page p, int index) {
+        if(storage != null && !loadedPages.get(p.index)) {
+            return storage.isEmpty(index);
+        }
+        return p.gui.items.isEmpty(topReserved.size() * 9 + index - p.offset);
+    }
+
+    /**
+     * Removes pages at the end of the menu which hold no items, moving their viewers to the new last page.
+     */
+    void shrinkToFit() {
+
+        int end = contentEnd();
+        int keep = 1;
+        while(keep < pages.size() && pages.get(keep).offset < end) {
+            keep++;
+        }
+        if(keep >= pages.size()) return;
+
+        List<ServerPlayer> displaced = new ArrayList<>();
+        boolean written = false;
+        for(Page p : pages.subList(keep, pages.size())) {
+            if(storage != null && unsavedPages.get(p.index)) {
+                writeBack(p);
+                written = true;
+            }
+            displaced.addAll(p.gui.viewers());
+        }
+        if(written) flushStorage();
+
+        pages = new ArrayList<>(pages.subList(0, keep));
+        loadedPages.clear(keep, Integer.MAX_VALUE);
+        unsavedPages.clear(keep, Integer.MAX_VALUE);
+
+        int newRows = 0;
+        for(Page p : pages) {
+            newRows += p.size / 9;
+        }
+        rows = newRows;
+
+        // The page count has changed, so rows like page controls may need to be filled again
+        for(Page p : pages) {
+            if(p.gui.hasViewers() && ensureReserved(p)) {
+                p.gui.update();
+            }
+        }
+        for(ServerPlayer player : displaced) {
+            open(player, keep - 1);
+        }
+    }
+
+    private int localIndex(int index) {
+        Page p = getPage(index);
+        return topReserved.size() * 9 + index - p.offset;
     }
 
     @Override
     public void clearItem(int index) {
         Page p = getPage(index);
-        if(p != null) p.gui.clearItem(index - p.offset);
+        int topOffset = topReserved.size() * 9;
+        if(p != null && !writeThrough(index, ItemStack.EMPTY)) {
+            if(storage != null) {
+                ensureLoaded(p);
+                unsavedPages.set(p.index);
+            }
+            p.gui.clearItem(topOffset + index - p.offset);
+        }
+        searchIndex.remove(index);
+    }
+
+    @Override
+    public void setSearchTerms(int index, String text, Collection<String> tags) {
+        searchIndex.put(index, text, tags);
+    }
+
+    @Override
+    public PagedInventoryMenu filter(String query) {
+
+        IntList matches = searchIndex.search(query);
+
+        PagedInventoryMenuImpl view = new PagedInventoryMenuImpl(title, sizeProvider, 0, context);
+        view.topReserved.addAll(topReserved);
+        view.bottomReserved.addAll(bottomReserved);
+        view.updatePages(Math.max(0, matches.size() - 1), true);
+
+        int topOffset = topReserved.size() * 9;
+        int viewPage = 0;
+        for(int i = 0 ; i < matches.size() ; i++) {
+            int index = matches.getInt(i);
+            Page src = getPage(index);
+            if(src == null) continue;
+
+            while(view.pages.get(viewPage).offset + view.pages.get(viewPage).size <= i) {
+                viewPage++;
+            }
+            Page dst = view.pages.get(viewPage);
+            SlotStore.copy(src.gui.items, topOffset + index - src.offset, dst.gui.items, topOffset + i - dst.offset, 1);
+        }
+
+        return view;
+    }
+
+    @Override
+    public void setRefreshInterval(int index, int interval) {
+        Page p = getPage(index);
+        int topOffset = topReserved.size() * 9;
+        if(p != null) p.gui.setRefreshInterval(topOffset + index - p.offset, interval);
+    }
+
+    @Override
+    public void bindSlot(int index, ObservableValue<?> source) {
+        Page p = getPage(index);
+        int topOffset = topReserved.size() * 9;
+        if(p != null) p.gui.bindSlot(topOffset + index - p.offset, source);
     }
 
     @Override
@@ -104,19 +402,17 @@ public class PagedInventoryMenuImpl implements PagedInventoryMenu {
     @Override
     public int firstEmpty() {
         for(Page p : pages) {
-            int firstEmpty = p.gui.firstEmpty();
-            if(firstEmpty != -1) return firstEmpty;
+            for(int i = 0 ; i < p.size ; i++) {
+                if(isEmpty(p, p.offset + i)) return p.offset + i;
+            }
         }
         return -1;
     }
 
     @Override
     public int lastItem() {
-        for(int i = pages.size() - 1 ; i > 0 ; i--) {
-            int lastItem = pages.get(i).gui.lastItem();
-            if(lastItem != -1) return lastItem;
-        }
-        return -1;
+        int end = contentEnd();
+        return end - 1;
     }
 
     @Override
@@ -125,13 +421,21 @@ public class PagedInventoryMenuImpl implements PagedInventoryMenu {
             p.gui.closeAll();
         }
         pages.clear();
+        searchIndex.clear();
+        rows = 0;
         resize(0);
     }
 
     @Override
     public void update() {
+        // Only pages which are being viewed are resolved again. Others are rendered when they are next opened.
         for(Page p : pages) {
-            p.gui.update();
+            if(p.gui.hasViewers()) {
+                ensureReserved(p);
+                p.gui.update();
+            } else {
+                p.gui.markStale();
+            }
         }
     }
 
@@ -140,6 +444,23 @@ public class PagedInventoryMenuImpl implements PagedInventoryMenu {
         open(player, 0);
     }
 
+    /**
+     * Goes back to a page from a navigation stack. The cached screen is only used if the page still exists and has not
+     * been rebuilt since it was captured.
+     */
+    private void reopen(ServerPlayer player, InventoryMenuImpl.CachedScreen screen) {
+        int index = Math.min(screen.gui.page(), pages.size() - 1);
+        Page p = pages.get(index);
+        if(p.gui != screen.gui) {
+            open(player, index);
+            return;
+        }
+
+        ensureLoaded(p);
+        if(ensureReserved(p)) p.gui.update();
+        p.gui.reopen(player, screen);
+    }
+
     @Override
     public void close(ServerPlayer player) {
         if(player == null) return;
@@ -162,16 +483,41 @@ public class PagedInventoryMenuImpl implements PagedInventoryMenu {
         }
     }
 
+    @Override
+    public void save() {
+        if(storage == null) return;
+
+        for(int i = unsavedPages.nextSetBit(0) ; i >= 0 ; i = unsavedPages.nextSetBit(i + 1)) {
+            if(i < pages.size()) writeBack(pages.get(i));
+        }
+        unsavedPages.clear();
+        flushStorage();
+    }
+
+    @Override
+    public PagedBatch batch() {
+        return new MenuBatch.Paged(this);
+    }
+
     public void resize(int max) {
-        if(max > size()) {
+        if(max >= size()) {
             updatePages(max, false);
         }
     }
 
     private Page getPage(int index) {
 
-        for(Page p : pages) {
-            if(p.offset + p.size > index) {
+        // Pages are contiguous and sorted by offset
+        int low = 0;
+        int high = pages.size() - 1;
+        while(low <= high) {
+            int mid = (low + high) >>> 1;
+            Page p = pages.get(mid);
+            if(index < p.offset) {
+                high = mid - 1;
+            } else if(index >= p.offset + p.size) {
+                low = mid + 1;
+            } else {
                 return p;
             }
         }
@@ -183,18 +529,326 @@ public class PagedInventoryMenuImpl implements PagedInventoryMenu {
         return getPage(index);
     }
 
-    private void setupReserved(InventoryMenuImpl gui, int page) {
+    private Page getPageForEdit(int index) {
+        Page p = updateAndGetPage(index);
+        if(storage != null) {
+            ensureLoaded(p);
+            unsavedPages.set(p.index);
+        }
+        return p;
+    }
 
-        int offset = 0;
+    /**
+     * Rejects items which could not survive a trip through this menu's storage. Only plain stacks are stored, and clicks
+     * on stored items are handled by the storage click event, so suppliers and per-slot events would be lost as soon
+     * as their page was unloaded.
+     */
+    private void checkStorable(ItemSupplier supplier, Object event) {
+        if(storage == null) return;
+        if(supplier != null) {
+            throw new UnsupportedOperationException("Menus backed by storage can only hold plain items!");
+        }
+        if(event != null) {
+            throw new UnsupportedOperationException("Menus backed by storage handle clicks with their storage click event!");
+        }
+    }
+
+    /**
+     * Writes an item straight to storage if it is on a page which is not loaded and has no viewers, so editing pages
+     * nobody is looking at does not decode them into memory. Click events are not kept, as with any stored item.
+     * @return Whether the item was written to storage.
+     */
+    private boolean writeThrough(int index, ItemStack itemStack) {
+        if(storage == null) return false;
+
+        Page p = updateAndGetPage(index);
+        if(loadedPages.get(p.index) || p.gui.hasViewers()) return false;
+
+        if(!itemStack.isEmpty() || index < storage.size()) {
+            storage.write(index, itemStack);
+            if(++unflushedWrites >= MAX_UNFLUSHED_WRITES) flushStorage();
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the items on the given page from storage, if the menu has storage and the page is not loaded.
+     */
+    private void ensureLoaded(Page p) {
+        if(storage == null || loadedPages.get(p.index)) return;
+
+        int topOffset = topReserved.size() * 9;
+        p.gui.clear(topOffset, topOffset + p.size);
+
+        int end = Math.min(p.offset + p.size, storage.size());
+        for(int i = p.offset ; i < end ; i++) {
+            if(!storage.isEmpty(i)) {
+                p.gui.setItem(topOffset + i - p.offset, storage.read(i), storedEvent(i));
+            }
+        }
+
+        loadedPages.set(p.index);
+        p.gui.setCloseListener(() -> unload(p));
+    }
+
+    private PagedClickEvent storedEvent(int index) {
+        if(storageEvent == null) return null;
+        return (player, type, page) -> storageEvent.execute(player, type, index);
+    }
+
+    /**
+     * Writes the given page back to storage if it has changed, then drops its items from memory.
+     */
+    private void unload(Page p) {
+        if(pages.size() <= p.index || pages.get(p.index) != p || p.gui.hasViewers()) return;
+
+        if(unsavedPages.get(p.index)) {
+            writeBack(p);
+            unsavedPages.clear(p.index);
+            flushStorage();
+        }
+
+        int topOffset = topReserved.size() * 9;
+        p.gui.clear(topOffset, topOffset + p.size);
+        loadedPages.clear(p.index);
+    }
+
+    private void writeBack(Page p) {
+        if(!loadedPages.get(p.index)) return;
+
+        int topOffset = topReserved.size() * 9;
+        for(int i = 0 ; i < p.size ; i++) {
+            int index = p.offset + i;
+            ItemStack is = p.gui.items.stack(topOffset + i);
+            if(is != null && !is.isEmpty()) {
+                storage.write(index, is);
+            } else if(index < storage.size()) {
+                storage.write(index, ItemStack.EMPTY);
+            }
+        }
+    }
+
+    private void flushStorage() {
+        unflushedWrites = 0;
+        try {
+            storage.flush();
+        } catch (IOException ex) {
+            LOGGER.error("Unable to save menu storage!", ex);
+        }
+    }
+
+    /**
+     * Reattaches storage to the pages after they have been rebuilt. Pages which are being viewed are reloaded, and all
+     * other pages are dropped from memory.
+     */
+    private void resetStorage() {
+        int topOffset = topReserved.size() * 9;
+        loadedPages.clear();
+        for(Page p : pages) {
+            if(p.gui.hasViewers()) {
+                ensureLoaded(p);
+                ensureReserved(p);
+                p.gui.update();
+            } else {
+                p.gui.clear(topOffset, topOffset + p.size);
+            }
+        }
+    }
+
+    /**
+     * Fills the reserved rows of the given page, if they have not been filled yet or their render keys have changed
+     * since they were last filled. Rows with the same provider and render key are only rendered once and shared
+     * between pages.
+     * @return Whether any row was changed.
+     */
+    private boolean ensureReserved(Page p) {
+
+        int pageCount = pages.size();
+        boolean changed = false;
+        int row = 0;
         for(RowProvider rp : topReserved) {
-            gui.clear(offset, offset + 9);
-            rp.fillRow(page, rowFromGui(gui, page, offset), this);
+            changed |= applyReserved(p, row, row * 9, rp, pageCount);
+            row++;
         }
-        offset = gui.size() - (bottomReserved.size() * 9);
+        int offset = p.gui.size() - (bottomReserved.size() * 9);
         for(RowProvider rp : bottomReserved) {
-            gui.clear(offset, offset + 9);
-            rp.fillRow(page, rowFromGui(gui, page, offset), this);
+            changed |= applyReserved(p, row, offset, rp, pageCount);
+            offset += 9;
+            row++;
+        }
+        return changed;
+    }
+
+    private boolean applyReserved(Page p, int row, int offset, RowProvider rp, int pageCount) {
+
+        long key = rp.renderKey(p.index, pageCount);
+        if(p.isReserved(row, key)) {
+            return false;
+        }
+
+        Long2ObjectMap<SlotStore> cache = reservedRenders.computeIfAbsent(rp, k -> new Long2ObjectOpenHashMap<>());
+        SlotStore render = cache.get(key);
+        if(render == null) {
+            // Bound the cache for providers whose keys change with every page or page count
+            if(cache.size() > pageCount * 2 + 8) {
+                cache.clear();
+            }
+            render = new SlotStore(9);
+            rp.fillRow(p.index, rowFromStore(render), this);
+            cache.put(key, render);
         }
+
+        SlotStore.copy(render, 0, p.gui.items, offset, 9);
+        p.setReserved(row, key);
+        return true;
+    }
+
+    /**
+     * Moves the items in [start, end) and their search terms forward by one slot, leaving the slot at start empty.
+     * Pages are shifted with bulk copies, carrying one item across each page boundary. The menu must already be large
+     * enough to hold an item at end. Affected pages are marked dirty, but not updated.
+     * @param start The first index to move.
+     * @param end The index after the last index to move.
+     */
+    void shiftForward(int start, int end) {
+        shiftSlotsForward(start, end);
+        searchIndex.shift(start, end, 1);
+    }
+
+    private void shiftSlotsForward(int start, int end) {
+
+        int topOffset = topReserved.size() * 9;
+        int dest = end;
+        while(dest > start) {
+            Page p = getPage(dest);
+            ensureLoaded(p);
+            int destLow = Math.max(start + 1, p.offset);
+
+            // Items which stay on this page
+            int inPageLow = Math.max(destLow, p.offset + 1);
+            if(dest >= inPageLow) {
+                int local = topOffset + inPageLow - p.offset;
+                SlotStore.copy(p.gui.items, local - 1, p.gui.items, local, dest - inPageLow + 1);
+            }
+
+            // The item carried over from the end of the previous page
+            if(destLow == p.offset) {
+                Page prev = pages.get(p.index - 1);
+                ensureLoaded(prev);
+                SlotStore.copy(prev.gui.items, topOffset + prev.size - 1, p.gui.items, topOffset, 1);
+            }
+
+            markDirty(p);
+            dest = destLow - 1;
+        }
+
+        Page first = getPage(start);
+        ensureLoaded(first);
+        first.gui.clearItem(topOffset + start - first.offset);
+        markDirty(first);
+    }
+
+    /**
+     * Moves the items in (start, end] and their search terms back by one slot, leaving the slot at end empty. Affected
+     * pages are marked dirty, but not updated.
+     * @param start The index to overwrite.
+     * @param end The last index to move.
+     * @see PagedInventoryMenuImpl#shiftForward(int, int)
+     */
+    void shiftBackward(int start, int end) {
+        shiftSlotsBackward(start, end);
+        searchIndex.remove(start);
+        searchIndex.shift(start + 1, end + 1, -1);
+    }
+
+    private void shiftSlotsBackward(int start, int end) {
+
+        int topOffset = topReserved.size() * 9;
+        int dest = start;
+        while(dest < end) {
+            Page p = getPage(dest);
+            ensureLoaded(p);
+            int pageLast = p.offset + p.size - 1;
+            int destHigh = Math.min(end - 1, pageLast);
+
+            // Items which stay on this page
+            int inPageHigh = Math.min(destHigh, pageLast - 1);
+            if(inPageHigh >= dest) {
+                int local = topOffset + dest - p.offset;
+                SlotStore.copy(p.gui.items, local + 1, p.gui.items, local, inPageHigh - dest + 1);
+            }
+
+            // The item carried over from the start of the next page
+            if(destHigh == pageLast) {
+                Page next = pages.get(p.index + 1);
+                ensureLoaded(next);
+                SlotStore.copy(next.gui.items, topOffset, p.gui.items, topOffset + p.size - 1, 1);
+            }
+
+            markDirty(p);
+            dest = destHigh + 1;
+        }
+
+        Page last = getPage(end);
+        ensureLoaded(last);
+        last.gui.clearItem(topOffset + end - last.offset);
+        markDirty(last);
+    }
+
+    /**
+     * Moves the item at one index to another, shifting the items between them and their search terms by one slot.
+     * Affected pages are marked dirty, but not updated.
+     * @param from The index of the item to move.
+     * @param to The index to move the item to.
+     */
+    void moveItem(int from, int to) {
+        if(from == to) return;
+
+        int topOffset = topReserved.size() * 9;
+        SlotStore moved = new SlotStore(1);
+        Page src = getPage(from);
+        ensureLoaded(src);
+        SlotStore.copy(src.gui.items, topOffset + from - src.offset, moved, 0, 1);
+
+        if(from < to) {
+            shiftSlotsBackward(from, to);
+        } else {
+            shiftSlotsForward(to, from);
+        }
+        searchIndex.reorder(from, to);
+
+        Page dst = getPage(to);
+        SlotStore.copy(moved, 0, dst.gui.items, topOffset + to - dst.offset, 1);
+        markDirty(dst);
+    }
+
+    void markDirty(int index) {
+        Page p = getPage(index);
+        if(p != null) markDirty(p);
+    }
+
+    private void markDirty(Page p) {
+        dirtyFrom = Math.min(dirtyFrom, p.index);
+        dirtyTo = Math.max(dirtyTo, p.index);
+        if(storage != null) unsavedPages.set(p.index);
+    }
+
+    /**
+     * Updates each page which has been marked dirty since the last call.
+     */
+    void updateDirty() {
+        int to = Math.min(dirtyTo, pages.size() - 1);
+        for(int i = dirtyFrom ; i <= to ; i++) {
+            Page p = pages.get(i);
+            p.gui.update();
+
+            // Pages which were only loaded to shift their items can be written back immediately
+            if(storage != null && !p.gui.hasViewers()) {
+                unload(p);
+            }
+        }
+        dirtyFrom = Integer.MAX_VALUE;
+        dirtyTo = -1;
     }
 
     private Page createEmptyPage(int page, int offset, int size) {
@@ -202,11 +856,17 @@ public class PagedInventoryMenuImpl implements PagedInventoryMenu {
         int realSize = size + (topReserved.size() * 9) + (bottomReserved.size() * 9);
 
         InventoryMenuImpl gui = InventoryMenuImpl.create(title, realSize, context);
-        return new Page(gui, offset, page, size);
+        gui.setPage(page);
+        gui.setReopenHandler(reopenHandler);
+        return new Page(gui, offset, page, size, topReserved.size() + bottomReserved.size());
     }
 
     private void updatePages(int lastItem, boolean forceRefresh) {
 
+        if(storage != null) {
+            save();
+        }
+
         // Find the new page sizes
         List<Integer> newSizes = new ArrayList<>();
         int offset = 0;
@@ -243,7 +903,7 @@ public class PagedInventoryMenuImpl implements PagedInventoryMenu {
 
                 itemsRemaining -= copied;
 
-                System.arraycopy(p.gui.items, topOffset, partialPage.gui.items, copyStart, copied);
+                SlotStore.copy(p.gui.items, topOffset, partialPage.gui.items, copyStart, copied);
                 partialPage.gui.update();
 
                 if(itemsRemaining == 0) {
@@ -264,7 +924,6 @@ public class PagedInventoryMenuImpl implements PagedInventoryMenu {
                         newPages.add(p);
                     } else {
                         newPages.add(p.reindex(index, title));
-                        setupReserved(p.gui, index);
                     }
 
                 // If not, reconstruct it.
@@ -276,8 +935,9 @@ public class PagedInventoryMenuImpl implements PagedInventoryMenu {
                         int contentSize = partialPage.size;
 
                         int copied = Math.min(contentSize, rpItems);
-                        System.arraycopy(p.gui.items, topOffset, partialPage.gui.items, topOffset, copied);
-                        partialPage.gui.update();
+                        SlotStore.copy(p.gui.items, topOffset, partialPage.gui.items, topOffset, copied);
+
+                        // The new page is rendered as each viewer is moved onto it
                         p.gui.moveViewers(partialPage.gui);
 
                         itemsRemaining = contentSize - copied;
@@ -307,38 +967,118 @@ public class PagedInventoryMenuImpl implements PagedInventoryMenu {
         }
 
         this.pages = newPages;
+
+        // Reserved rows are filled lazily when a page is opened, unless someone is already looking at it
         for(Page p : pages) {
-            setupReserved(p.gui, p.index);
+            if(p.gui.hasViewers() && ensureReserved(p)) {
+                p.gui.update();
+            }
+        }
+        if(storage != null) {
+            resetStorage();
         }
 
     }
 
 
     public static PagedInventoryMenu create(Message<Component> title, PagedInventoryMenu.SizeProvider sizeProvider, int size, PipelineContext ctx) {
-        return new PagedInventoryMenuImpl(title, sizeProvider, size, ctx);
+        PagedInventoryMenuImpl out = new PagedInventoryMenuImpl(title, sizeProvider, 0, ctx);
+        out.resize(size);
+        return out;
     }
 
 
-    public static Row rowFromGui(InventoryMenu gui, int page, int offset) {
+    public static PagedInventoryMenu create(Message<Component> title, PagedInventoryMenu.SizeProvider sizeProvider, MenuStorage storage, IndexedClickEvent event, PipelineContext ctx) {
+        PagedInventoryMenuImpl out = new PagedInventoryMenuImpl(title, sizeProvider, 0, ctx);
+        out.storage = storage;
+        out.storageEvent = event;
+        out.resize(Math.max(0, storage.size() - 1));
+        return out;
+    }
+
+
+    public static Row rowFromStore(SlotStore store) {
         return (index, is, event) -> {
             if(index < 0 || index > 8) {
                 throw new IllegalStateException("Attempt to place item outside of row bounds!");
             }
 
-            gui.setItem(offset + index, is, (pl, ct) ->
-                    event.execute(pl, ct, page));
+            store.set(index, is, event);
         };
     }
 
 
-    private record Page(InventoryMenuImpl gui, int offset, int index, int size) {
+    private static final class Page {
+
+        final InventoryMenuImpl gui;
+        final int offset;
+        final int index;
+        final int size;
+
+        // The render key each reserved row was last filled with, and whether it has been filled at all
+        private final long[] reservedKeys;
+        private final boolean[] reservedRendered;
+
+        Page(InventoryMenuImpl gui, int offset, int index, int size, int reservedRows) {
+            this.gui = gui;
+            this.offset = offset;
+            this.index = index;
+            this.size = size;
+            this.reservedKeys = new long[reservedRows];
+            this.reservedRendered = new boolean[reservedRows];
+        }
+
+        /**
+         * Determines whether the given reserved row was last filled with the given render key.
+         */
+        boolean isReserved(int row, long key) {
+            return reservedRendered[row] && reservedKeys[row] == key;
+        }
+
+        void setReserved(int row, long key) {
+            reservedKeys[row] = key;
+            reservedRendered[row] = true;
+        }
 
+        /**
+         * Creates a copy of this page at a new index. The copy starts with the same reserved rows as this page.
+         */
         Page reindex(int index, Message<Component> title) {
-                return new Page(gui.copy(title), offset, index, size);
+            InventoryMenuImpl copy = gui.copy(title);
+            copy.setPage(index);
+
+            Page out = new Page(copy, offset, index, size, reservedKeys.length);
+            for(int row = 0 ; row < reservedKeys.length ; row++) {
+                if(reservedRendered[row]) out.setReserved(row, reservedKeys[row]);
             }
+            return out;
+        }
     }
 
 
+    public static class PageControls implements PagedInventoryMenu.RowProvider {
+        private final ItemSupplier nextPage;
+        private final ItemSupplier prevPage;
+        public PageControls(ItemSupplier nextPage, ItemSupplier prevPage) {
+            this.nextPage = nextPage;
+            this.prevPage = prevPage;
+        }
+        @Override
+        public void fillRow(int page, Row row, PagedInventoryMenu gui) {
+            if(page > 0) {
+                row.setItem(0, prevPage, (player, type, p) -> gui.open(player, p - 1));
+            }
+            if(page + 1 < gui.pageCount()) {
+                row.setItem(8, nextPage, (player, type, p) -> gui.open(player, p + 1));
+            }
+        }
+        @Override
+        public long renderKey(int page, int pageCount) {
+            // Only the first and last pages differ
+            return (page > 0 ? 1 : 0) | (page + 1 < pageCount ? 2 : 0);
+        }
+    }
+
     public static class Fixed implements PagedInventoryMenu.SizeProvider {
         private final int pageSize;
         public Fixed(int pageSize) {
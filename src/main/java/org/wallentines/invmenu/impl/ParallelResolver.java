@@ -0,0 +1,79 @@
+package org.wallentines.invmenu.impl;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.minecraft.world.item.ItemStack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wallentines.pseudonym.PipelineContext;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.stream.IntStream;
+
+/**
+ * Resolves thread-safe item suppliers for many viewers at once on a shared worker pool. The server thread waits for
+ * the results, so menus cannot change while suppliers are being resolved, and then applies them in a single pass.
+ */
+final class ParallelResolver {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelResolver.class);
+
+    // Below this many resolutions, handing work to the pool costs more than it saves
+    private static final int MIN_PARALLEL_WORK = 64;
+
+    private static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(PARALLELISM, pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("Inventory Menu Resolver " + thread.getPoolIndex());
+        thread.setDaemon(true);
+        return thread;
+    }, null, false);
+
+    private ParallelResolver() { }
+
+    /**
+     * Resolves each thread-safe slot in the given store for each of the given contexts in parallel.
+     * @param items The items to resolve.
+     * @param contexts The context of each viewer.
+     * @return The resolved items for each viewer, indexed by slot, with null for slots which were not resolved. Returns
+     * null if there is not enough work to be worth resolving in parallel.
+     */
+    static ItemStack[][] resolve(SlotStore items, PipelineContext[] contexts) {
+        if (PARALLELISM < 2)
+            return null;
+
+        IntArrayList slots = new IntArrayList();
+        for (int i = 0; i < items.size(); i++) {
+            if (items.isThreadSafe(i)) {
+                slots.add(i);
+            }
+        }
+
+        int slotCount = slots.size();
+        int work = slotCount * contexts.length;
+        if (work < MIN_PARALLEL_WORK)
+            return null;
+
+        ItemStack[][] out = new ItemStack[contexts.length][items.size()];
+        int[] slotArray = slots.toIntArray();
+        try {
+            POOL.submit(() -> IntStream.range(0, work).parallel().forEach(job -> {
+                int viewer = job / slotCount;
+                int slot = slotArray[job % slotCount];
+                try {
+                    ItemStack is = items.resolve(slot, contexts[viewer]);
+                    out[viewer][slot] = is == null ? ItemStack.EMPTY : is;
+                } catch (Throwable th) {
+                    // Leave the slot unresolved, so it is resolved again on the server thread
+                    LOGGER.debug("Unable to resolve slot {} in parallel", slot, th);
+                }
+            })).join();
+        } catch (Throwable th) {
+            LOGGER.error("Error while resolving menu items in parallel", th);
+            return null;
+        }
+        return out;
+    }
+
+}
@@ -0,0 +1,142 @@
+package org.wallentines.invmenu.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hashed timer wheel which re-resolves individual menu slots at a fixed interval. Driven by the server tick, so it
+ * should only be used from the server thread.
+ */
+final class RefreshScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RefreshScheduler.class);
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    @SuppressWarnings("unchecked")
+    private static final List<Task>[] WHEEL = new List[WHEEL_SIZE];
+    private static final List<Task> DUE = new ArrayList<>();
+    private static int cursor;
+
+    static {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            WHEEL[i] = new ArrayList<>();
+        }
+    }
+
+    private RefreshScheduler() { }
+
+    /**
+     * Schedules a slot to be refreshed every given number of ticks, until the task is cancelled or the menu has no
+     * more viewers.
+     * @param menu The menu containing the slot.
+     * @param slot The slot index.
+     * @param interval The number of ticks between refreshes.
+     * @return A new task.
+     */
+    static Task schedule(Target menu, int slot, int interval) {
+        Task task = new Task(menu, slot, interval);
+        insert(task);
+        return task;
+    }
+
+    private static void insert(Task task) {
+        int delay = Math.max(1, task.interval);
+        task.rounds = (delay - 1) >> WHEEL_BITS;
+        WHEEL[(cursor + delay) & WHEEL_MASK].add(task);
+    }
+
+    static void tick() {
+
+        cursor = (cursor + 1) & WHEEL_MASK;
+        List<Task> bucket = WHEEL[cursor];
+
+        int kept = 0;
+        for (Task task : bucket) {
+            if (task.cancelled)
+                continue;
+
+            if (task.rounds > 0) {
+                task.rounds--;
+                bucket.set(kept++, task);
+            } else {
+                DUE.add(task);
+            }
+        }
+        bucket.subList(kept, bucket.size()).clear();
+
+        for (Task task : DUE) {
+            try {
+                if (task.menu.refreshSlot(task)) {
+                    insert(task);
+                }
+            } catch (Throwable th) {
+                LOGGER.error("Error while refreshing slot {}", task.slot, th);
+                task.menu.cancelRefresh(task);
+            }
+        }
+        DUE.clear();
+    }
+
+    /**
+     * Cancels and drops every scheduled task, so nothing scheduled on one server is refreshed on the next.
+     */
+    static void clear() {
+        for (List<Task> bucket : WHEEL) {
+            for (Task task : bucket) {
+                task.cancel();
+            }
+            bucket.clear();
+        }
+        DUE.clear();
+        cursor = 0;
+    }
+
+    static final class Task {
+
+        final Target menu;
+        final int slot;
+        final int interval;
+        private int rounds;
+        private boolean cancelled;
+
+        private Task(Target menu, int slot, int interval) {
+            this.menu = menu;
+            this.slot = slot;
+            this.interval = interval;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * A menu with slots which can be refreshed.
+     */
+    interface Target {
+
+        /**
+         * Re-resolves a single slot for each viewer when its refresh task is due.
+         * @param task The due task.
+         * @return Whether the task should be scheduled again.
+         */
+        boolean refreshSlot(Task task);
+
+        /**
+         * Cancels a task and forgets it.
+         * @param task The task to cancel.
+         */
+        void cancelRefresh(Task task);
+    }
+
+}
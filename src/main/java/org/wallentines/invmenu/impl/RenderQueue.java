@@ -0,0 +1,157 @@
+package org.wallentines.invmenu.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Spreads menu rendering over multiple ticks when a render budget is set. Pending renders are grouped by menu, and
+ * menus take turns rendering a slice of slots each, so one large menu cannot hold back the others. Without a budget,
+ * everything is rendered immediately. Should only be used from the server thread, except for the budget setters.
+ */
+public final class RenderQueue {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RenderQueue.class);
+
+    private static final int SLICE_SIZE = 9;
+
+    private static volatile int maxSlots;
+    private static volatile long maxNanos;
+
+    private static final ArrayDeque<Group> GROUPS = new ArrayDeque<>();
+    private static final Map<Object, Group> GROUPS_BY_OWNER = new IdentityHashMap<>();
+    private static int spentSlots;
+
+    private RenderQueue() { }
+
+    public static void setMaxSlots(int slots) {
+        maxSlots = Math.max(0, slots);
+    }
+
+    public static void setMaxMicros(long micros) {
+        maxNanos = Math.max(0, micros) * 1000L;
+    }
+
+    /**
+     * Determines whether renders should be queued rather than run immediately.
+     * @return Whether a render budget is set.
+     */
+    static boolean isLimited() {
+        return maxSlots > 0 || maxNanos > 0;
+    }
+
+    /**
+     * Queues a job to render its pending slots. Does nothing if the job is already queued.
+     * @param owner The menu the job renders, used to share the budget fairly between menus.
+     * @param job The job to queue.
+     */
+    static void enqueue(Object owner, Job job) {
+        Group group = GROUPS_BY_OWNER.get(owner);
+        if (group == null) {
+            group = new Group(owner);
+            GROUPS_BY_OWNER.put(owner, group);
+            GROUPS.add(group);
+        }
+        if (group.queued.add(job)) {
+            group.jobs.add(job);
+        }
+    }
+
+    /**
+     * Counts slots rendered outside the queue, such as for a player who just clicked, against the next tick's budget.
+     * @param slots The number of slots rendered.
+     */
+    static void charge(int slots) {
+        spentSlots += slots;
+    }
+
+    static void tick() {
+
+        int slots = maxSlots > 0 ? maxSlots - spentSlots : Integer.MAX_VALUE;
+        long deadline = maxNanos > 0 ? System.nanoTime() + maxNanos : Long.MAX_VALUE;
+        spentSlots = 0;
+
+        while (slots > 0 && !GROUPS.isEmpty()) {
+
+            Group group = GROUPS.poll();
+            Job job = group.jobs.poll();
+            if (job != null) {
+                boolean requeue = false;
+                if (!job.isStale() && job.hasPending()) {
+                    try {
+                        slots -= job.render(Math.min(slots, SLICE_SIZE));
+                        requeue = job.hasPending();
+                    } catch (Throwable th) {
+                        // Drop the job, so a broken item cannot spin the queue
+                        LOGGER.error("Error while rendering a menu", th);
+                    }
+                }
+                if (requeue) {
+                    group.jobs.add(job);
+                } else {
+                    group.queued.remove(job);
+                }
+            }
+
+            if (group.jobs.isEmpty()) {
+                GROUPS_BY_OWNER.remove(group.owner);
+            } else {
+                GROUPS.add(group);
+            }
+
+            if (maxNanos > 0 && System.nanoTime() >= deadline) {
+                break;
+            }
+        }
+    }
+
+    static void clear() {
+        GROUPS.clear();
+        GROUPS_BY_OWNER.clear();
+        spentSlots = 0;
+    }
+
+    /**
+     * A viewer with slots waiting to be rendered.
+     */
+    interface Job {
+
+        /**
+         * Determines whether the viewer can no longer see the menu, so its pending slots can be dropped.
+         * @return Whether the job is stale.
+         */
+        boolean isStale();
+
+        /**
+         * Determines whether any slots are still waiting to be rendered.
+         * @return Whether the job has pending slots.
+         */
+        boolean hasPending();
+
+        /**
+         * Renders up to the given number of pending slots.
+         * @param max The maximum number of slots to render.
+         * @return The number of slots rendered.
+         */
+        int render(int max);
+
+    }
+
+    private static class Group {
+
+        final Object owner;
+        final ArrayDeque<Job> jobs = new ArrayDeque<>();
+        // Mirrors the deque, so checking whether a job is already queued does not scan it
+        final Set<Job> queued = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        Group(Object owner) {
+            this.owner = owner;
+        }
+    }
+
+}
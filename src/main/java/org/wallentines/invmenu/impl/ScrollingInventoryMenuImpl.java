@@ -0,0 +1,756 @@
+package org.wallentines.invmenu.impl;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.MenuProvider;
+import net.minecraft.world.entity.player.Inventory;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+import net.minecraft.world.inventory.Slot;
+import net.minecraft.world.item.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wallentines.invmenu.api.InventoryMenu;
+import org.wallentines.invmenu.api.ObservableValue;
+import org.wallentines.invmenu.api.RenderMemo;
+import org.wallentines.invmenu.api.ScrollingInventoryMenu;
+import org.wallentines.pseudonym.Message;
+import org.wallentines.pseudonym.PipelineContext;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+public class ScrollingInventoryMenuImpl implements ScrollingInventoryMenu, RefreshScheduler.Target, ViewerTracker.Tracked {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScrollingInventoryMenuImpl.class);
+
+    private final Message<Component> title;
+    private final int windowRows;
+    private final PipelineContext context;
+    private final SlotStore controls = new SlotStore(9);
+    private final List<Viewer> open = new ArrayList<>();
+    private final Int2ObjectMap<RefreshScheduler.Task> refreshTasks = new Int2ObjectOpenHashMap<>();
+    private final SlotBindings bindings = new SlotBindings(this::refreshBound);
+    private SlotStore items = new SlotStore(0);
+    private int length;
+    private long version;
+    private InventoryMenu.ItemSupplier scrollUp;
+    private InventoryMenu.ItemSupplier scrollDown;
+
+    protected ScrollingInventoryMenuImpl(Message<Component> title, int windowRows, PipelineContext context) {
+        this.title = title;
+        this.windowRows = windowRows;
+        this.context = context;
+    }
+
+    @Override
+    public void setItem(int index, ItemStack itemStack, ClickEvent event) {
+        ensureCapacity(index);
+        items.set(index, itemStack, event);
+        version++;
+        onChanged(index);
+    }
+
+    @Override
+    public void setItem(int index, ItemSupplier itemStack, ClickEvent event) {
+        ensureCapacity(index);
+        ObservableValue<?> previous = items.source(index);
+        items.set(index, itemStack, event);
+        bindings.rebind(items, previous, items.source(index), !open.isEmpty());
+        version++;
+        onChanged(index);
+    }
+
+    @Override
+    public void clearItem(int index) {
+        if (index >= length)
+            return;
+
+        ObservableValue<?> previous = items.source(index);
+        items.clear(index);
+        bindings.rebind(items, previous, null, !open.isEmpty());
+        RefreshScheduler.Task task = refreshTasks.remove(index);
+        if (task != null) {
+            task.cancel();
+        }
+
+        version++;
+        onChanged(index);
+        if (index == length - 1) {
+            int oldMax = maxScroll();
+            while (length > 0 && items.isEmpty(length - 1)) {
+                length--;
+            }
+            onResized(oldMax);
+        }
+    }
+
+    @Override
+    public void setRefreshInterval(int index, int interval) {
+        if (index >= length)
+            return;
+
+        items.setRefreshInterval(index, interval);
+        if (!open.isEmpty()) {
+            scheduleRefresh(index);
+        }
+    }
+
+    @Override
+    public void bindSlot(int index, ObservableValue<?> source) {
+        if (index >= length)
+            return;
+
+        ObservableValue<?> previous = items.source(index);
+        items.setSource(index, source);
+        bindings.rebind(items, previous, source, !open.isEmpty());
+    }
+
+    @Override
+    public void setScrollControls(ItemSupplier up, ItemSupplier down) {
+        this.scrollUp = up;
+        this.scrollDown = down;
+        for (Viewer viewer : open) {
+            viewer.renderControls();
+        }
+    }
+
+    @Override
+    public void setControlItem(int column, ItemSupplier itemStack, ClickEvent event) {
+        if (column < 0 || column >= 9)
+            throw new IndexOutOfBoundsException("Attempt to set control item outside of row bounds!");
+
+        controls.set(column, itemStack, event);
+        for (Viewer viewer : open) {
+            viewer.renderControls();
+        }
+    }
+
+    @Override
+    public int rows() {
+        return (length + 8) / 9;
+    }
+
+    @Override
+    public int size() {
+        return length;
+    }
+
+    @Override
+    public int windowRows() {
+        return windowRows;
+    }
+
+    @Override
+    public int maxScroll() {
+        return Math.max(0, rows() - windowRows);
+    }
+
+    @Override
+    public int firstEmpty() {
+        for (int i = 0; i < length; i++) {
+            if (items.isEmpty(i))
+                return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastItem() {
+        return length - 1;
+    }
+
+    @Override
+    public void clear() {
+        for (RefreshScheduler.Task task : refreshTasks.values()) {
+            task.cancel();
+        }
+        refreshTasks.clear();
+        bindings.unlistenAll();
+        items = new SlotStore(0);
+        length = 0;
+        update();
+    }
+
+    @Override
+    public void update() {
+        version++;
+        if (open.isEmpty())
+            return;
+
+        scheduleRefreshes();
+        bindings.listenAll(items);
+
+        int max = maxScroll();
+        for (Viewer viewer : open) {
+            viewer.invalidateAll();
+            viewer.scroll = Math.min(viewer.scroll, max);
+            viewer.update();
+        }
+    }
+
+    @Override
+    public void open(ServerPlayer player) {
+        open(player, 0);
+    }
+
+    @Override
+    public void open(ServerPlayer player, int row) {
+        open(player, row, null);
+    }
+
+    /**
+     * Opens the GUI for the given player, starting with the given resolved rows cached.
+     */
+    private void open(ServerPlayer player, int row, Int2ObjectMap<ItemStack[]> cachedRows) {
+
+        if (player.containerMenu != player.inventoryMenu) {
+            player.closeContainer();
+        }
+
+        PipelineContext ctx = PipelineContext.of(player, this);
+        player.openMenu(new MenuProvider() {
+
+            // The viewer is created before the title is requested, so the title can share its render memo
+            private Viewer created;
+
+            @Override
+            public @NotNull Component getDisplayName() {
+                if (created == null) {
+                    return title.get(context.and(ctx));
+                }
+                return RenderMemo.resolve(title, created.ctx);
+            }
+
+            @Override
+            public @Nullable AbstractContainerMenu createMenu(int i, Inventory inventory, Player player) {
+
+                if (!(player instanceof ServerPlayer spl))
+                    return null;
+                Viewer out = new Viewer(i, spl, Math.clamp(row, 0, maxScroll()), cachedRows);
+                created = out;
+                open.add(out);
+                if (open.size() == 1) {
+                    ViewerTracker.track(ScrollingInventoryMenuImpl.this);
+                    scheduleRefreshes();
+                    bindings.listenAll(items);
+                }
+
+                return out;
+            }
+        });
+    }
+
+    @Override
+    public void scroll(ServerPlayer player, int rows) {
+        Viewer viewer = getViewer(player);
+        if (viewer != null) {
+            viewer.scrollTo(viewer.scroll + rows);
+        }
+    }
+
+    @Override
+    public void scrollTo(ServerPlayer player, int row) {
+        Viewer viewer = getViewer(player);
+        if (viewer != null) {
+            viewer.scrollTo(row);
+        }
+    }
+
+    @Override
+    public int scrollPosition(ServerPlayer player) {
+        Viewer viewer = getViewer(player);
+        return viewer == null ? -1 : viewer.scroll;
+    }
+
+    @Override
+    public void close(ServerPlayer player) {
+        if (player == null)
+            return;
+        if (player.containerMenu != player.inventoryMenu) {
+            player.closeContainer();
+        }
+    }
+
+    @Override
+    public void closeAll() {
+        for (Viewer v : List.copyOf(open)) {
+            v.player.closeContainer();
+        }
+        if (!open.isEmpty()) {
+            open.clear();
+            onLastViewerClosed();
+        }
+    }
+
+    @Override
+    public void moveViewers(InventoryMenu other) {
+        // Opening another menu removes each viewer from this one
+        for (Viewer viewer : List.copyOf(open)) {
+            if (!viewer.isStale()) {
+                other.open(viewer.player);
+            }
+        }
+    }
+
+    @Override
+    public Batch batch() {
+        return new MenuBatch<>(this);
+    }
+
+    @Override
+    public int sweepViewers() {
+        int removed = 0;
+        for (int i = open.size() - 1; i >= 0; i--) {
+            Viewer viewer = open.get(i);
+            if (viewer.isStale()) {
+                open.remove(i);
+                viewer.pending = null;
+                viewer.scaffolding.release();
+                removed++;
+            }
+        }
+        if (removed > 0 && open.isEmpty()) {
+            onLastViewerClosed();
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean refreshSlot(RefreshScheduler.Task task) {
+        if (task.isCancelled())
+            return false;
+
+        if (open.isEmpty() || task.slot >= length || items.refreshInterval(task.slot) != task.interval) {
+            cancelRefresh(task);
+            return false;
+        }
+
+        onChanged(task.slot);
+        return true;
+    }
+
+    @Override
+    public void cancelRefresh(RefreshScheduler.Task task) {
+        task.cancel();
+        refreshTasks.remove(task.slot, task);
+    }
+
+    private Viewer getViewer(ServerPlayer player) {
+        for (Viewer viewer : open) {
+            if (viewer.player == player && !viewer.isStale()) {
+                return viewer;
+            }
+        }
+        return null;
+    }
+
+    private void ensureCapacity(int index) {
+        if (index >= items.size()) {
+            SlotStore grown = new SlotStore(Math.max(index + 1, items.size() * 2));
+            SlotStore.copy(items, 0, grown, 0, length);
+            items = grown;
+        }
+        if (index >= length) {
+            int oldMax = maxScroll();
+            length = index + 1;
+            onResized(oldMax);
+        }
+    }
+
+    /**
+     * Moves viewers who are scrolled past the end of the list back, and shows or hides the scroll controls if the
+     * maximum scroll position has changed.
+     */
+    private void onResized(int oldMax) {
+        int max = maxScroll();
+        if (max == oldMax)
+            return;
+
+        for (Viewer viewer : open) {
+            if (viewer.scroll > max) {
+                viewer.scrollTo(max);
+            } else {
+                viewer.renderControls();
+            }
+        }
+    }
+
+    /**
+     * Drops the resolved row containing the given index from each viewer's cache, and sends it again to the viewers
+     * who can see it. Does not invalidate cached screens, since refreshing and bound slots are always resolved again
+     * when a screen is restored.
+     */
+    private void onChanged(int index) {
+        int row = index / 9;
+        for (Viewer viewer : open) {
+            viewer.invalidate(row);
+        }
+    }
+
+    private boolean hasLiveSlot(int row) {
+        int end = Math.min(length, row * 9 + 9);
+        for (int i = row * 9; i < end; i++) {
+            if (items.source(i) != null || items.refreshInterval(i) > 0)
+                return true;
+        }
+        return false;
+    }
+
+    private void onLastViewerClosed() {
+        ViewerTracker.untrack(this);
+        bindings.unlistenAll();
+    }
+
+    private void scheduleRefreshes() {
+        for (int i = 0; i < length; i++) {
+            if (items.refreshInterval(i) > 0) {
+                scheduleRefresh(i);
+            }
+        }
+    }
+
+    private void scheduleRefresh(int slot) {
+
+        int interval = items.refreshInterval(slot);
+        RefreshScheduler.Task current = refreshTasks.get(slot);
+        if (current != null) {
+            if (current.interval == interval && !current.isCancelled())
+                return;
+            current.cancel();
+            refreshTasks.remove(slot);
+        }
+        if (interval > 0) {
+            refreshTasks.put(slot, RefreshScheduler.schedule(this, slot, interval));
+        }
+    }
+
+    private void refreshBound(ObservableValue<?> source) {
+        for (int i = 0; i < length; i++) {
+            if (items.source(i) == source) {
+                onChanged(i);
+            }
+        }
+    }
+
+    private void onClick(SlotStore store, int slot, ServerPlayer serverPlayer, ClickType clickType, int scroll) {
+        try {
+            store.click(slot, serverPlayer, clickType, scroll);
+        } catch (Throwable th) {
+            LOGGER.error("Error while executing click event for slot {}", slot, th);
+        }
+    }
+
+    public static ScrollingInventoryMenuImpl create(Message<Component> title, int windowRows, PipelineContext context) {
+        if (windowRows < 1 || windowRows > 5)
+            throw new IllegalArgumentException("Scrolling menus must show between 1 and 5 rows!");
+
+        return new ScrollingInventoryMenuImpl(title, windowRows, context);
+    }
+
+    /**
+     * The scroll position and resolved rows of a viewer who navigated away from this GUI.
+     */
+    private final class CachedScreen implements NavigationStack.Screen {
+
+        private final int scroll;
+        private final long version;
+        private Int2ObjectMap<ItemStack[]> rows;
+
+        private CachedScreen(int scroll, long version, Int2ObjectMap<ItemStack[]> rows) {
+            this.scroll = scroll;
+            this.version = version;
+            this.rows = rows;
+        }
+
+        @Override
+        public void restore(ServerPlayer player) {
+            open(player, scroll, version == ScrollingInventoryMenuImpl.this.version ? rows : null);
+        }
+
+        @Override
+        public void forget() {
+            rows = null;
+        }
+    }
+
+    private class Viewer extends AbstractContainerMenu implements RenderQueue.Job, NavigationStack.Capturable {
+
+        private final ServerPlayer player;
+        private final RenderMemo memo = new RenderMemo();
+        private final PipelineContext ctx;
+        private final MenuScaffolding scaffolding;
+        private final Int2ObjectMap<ItemStack[]> resolvedRows = new Int2ObjectOpenHashMap<>();
+        private int scroll;
+
+        // Window rows waiting to be rendered by the render queue, with the control row last
+        private BitSet pending;
+        private int cursor;
+
+        Viewer(int id, ServerPlayer spl, int scroll, Int2ObjectMap<ItemStack[]> cachedRows) {
+            super(InventoryMenuImpl.getMenuType(windowRows + 1), id);
+
+            this.player = spl;
+            this.ctx = context.and(PipelineContext.of(spl, ScrollingInventoryMenuImpl.this, memo));
+            this.scaffolding = MenuScaffolding.acquire(windowRows + 1);
+            this.scroll = scroll;
+            if (cachedRows != null) {
+                resolvedRows.putAll(cachedRows);
+                // Bound and refreshing slots may have changed while nobody was listening
+                resolvedRows.keySet().removeIf((int r) -> hasLiveSlot(r));
+            }
+
+            for (Slot slot : scaffolding.slots) {
+                addSlot(slot);
+            }
+
+            this.addStandardInventorySlots(spl.getInventory(), 8, 18 + (windowRows + 1) * 2 + 13);
+            render();
+        }
+
+        @Override
+        public boolean isStale() {
+            return player.isRemoved() || player.hasDisconnected() || player.containerMenu != this;
+        }
+
+        @Override
+        public NavigationStack.Screen capture() {
+            return new CachedScreen(scroll, version, new Int2ObjectOpenHashMap<>(resolvedRows));
+        }
+
+        /**
+         * Moves the window to the given row, sending only the slots whose contents differ from what is already shown.
+         * Rows near the window stay cached, so scrolling back and forth does not resolve them again.
+         */
+        void scrollTo(int row) {
+
+            row = Math.clamp(row, 0, maxScroll());
+            if (row == scroll || isStale())
+                return;
+
+            scroll = row;
+            resolvedRows.keySet().removeIf((int r) -> r < scroll - windowRows || r >= scroll + windowRows * 2);
+            render();
+        }
+
+        void invalidateAll() {
+            resolvedRows.clear();
+        }
+
+        /**
+         * Renders the whole window again, or queues it to be rendered if a render budget is set.
+         */
+        void update() {
+            if (isStale())
+                return;
+
+            if (RenderQueue.isLimited()) {
+                markPending(0, windowRows + 1);
+            } else {
+                render();
+            }
+        }
+
+        void invalidate(int row) {
+            resolvedRows.remove(row);
+            if (row < scroll || row >= scroll + windowRows || isStale())
+                return;
+
+            if (RenderQueue.isLimited()) {
+                markPending(row - scroll, row - scroll + 1);
+            } else {
+                memo.clear();
+                renderRow(row - scroll, incrementStateId());
+            }
+        }
+
+        /**
+         * Renders the whole window immediately, dropping any rows waiting in the render queue.
+         */
+        void render() {
+            if (pending != null) {
+                pending.clear();
+            }
+            memo.clear();
+            int stateId = incrementStateId();
+            for (int r = 0; r < windowRows; r++) {
+                renderRow(r, stateId);
+            }
+            renderControls(stateId);
+        }
+
+        void renderControls() {
+            if (isStale())
+                return;
+
+            if (RenderQueue.isLimited()) {
+                markPending(windowRows, windowRows + 1);
+            } else {
+                memo.clear();
+                renderControls(incrementStateId());
+            }
+        }
+
+        private void markPending(int start, int end) {
+            if (pending == null) {
+                pending = new BitSet(windowRows + 1);
+            }
+            pending.set(start, end);
+            RenderQueue.enqueue(ScrollingInventoryMenuImpl.this, this);
+        }
+
+        @Override
+        public boolean hasPending() {
+            return pending != null && !pending.isEmpty();
+        }
+
+        /**
+         * Renders pending rows of the window, continuing from where the last call stopped. Whole rows are rendered, so
+         * at least one row is rendered even if the given maximum is smaller than a row.
+         */
+        @Override
+        public int render(int max) {
+
+            memo.clear();
+            int stateId = incrementStateId();
+
+            int count = 0;
+            while (count < max) {
+                int row = pending.nextSetBit(cursor);
+                if (row == -1) {
+                    row = pending.nextSetBit(0);
+                    if (row == -1)
+                        break;
+                }
+
+                pending.clear(row);
+                cursor = row + 1;
+
+                if (row == windowRows) {
+                    renderControls(stateId);
+                } else {
+                    renderRow(row, stateId);
+                }
+                count += 9;
+            }
+            return count;
+        }
+
+        /**
+         * Renders all pending rows immediately, so a player who interacts with the menu sees the result of their click
+         * without waiting for the render queue.
+         */
+        private void renderPending() {
+            if (hasPending() && !isStale()) {
+                RenderQueue.charge(render(Integer.MAX_VALUE));
+            }
+        }
+
+        private void renderControls(int stateId) {
+            int offset = windowRows * 9;
+            for (int c = 0; c < 9; c++) {
+                ItemStack is;
+                if (c == 0 && scrollUp != null && scroll > 0) {
+                    is = scrollUp.get(ctx);
+                } else if (c == 8 && scrollDown != null && scroll < maxScroll()) {
+                    is = scrollDown.get(ctx);
+                } else {
+                    is = controls.resolve(c, ctx);
+                }
+                send(offset + c, stateId, is);
+            }
+        }
+
+        private void renderRow(int windowRow, int stateId) {
+            ItemStack[] row = resolveRow(scroll + windowRow);
+            int offset = windowRow * 9;
+            for (int c = 0; c < 9; c++) {
+                send(offset + c, stateId, row[c]);
+            }
+        }
+
+        private ItemStack[] resolveRow(int row) {
+            ItemStack[] out = resolvedRows.get(row);
+            if (out == null) {
+                out = new ItemStack[9];
+                int start = row * 9;
+                for (int c = 0; c < 9; c++) {
+                    int index = start + c;
+                    ItemStack is = index < length ? items.resolve(index, ctx) : null;
+                    out[c] = is == null ? ItemStack.EMPTY : is;
+                }
+                resolvedRows.put(row, out);
+            }
+            return out;
+        }
+
+        private void send(int slot, int stateId, ItemStack is) {
+            if (is == null) {
+                is = ItemStack.EMPTY;
+            }
+            if (!ItemStack.matches(getSlot(slot).getItem(), is)) {
+                setItem(slot, stateId, is);
+            }
+        }
+
+        @Override
+        public @NotNull ItemStack quickMoveStack(Player player, int i) {
+            return ItemStack.EMPTY;
+        }
+
+        @Override
+        public boolean stillValid(Player player) {
+            return true;
+        }
+
+        @Override
+        public void clicked(int slot, int button, net.minecraft.world.inventory.ClickType clickType, Player player) {
+
+            int controlRow = windowRows * 9;
+            if (player.level().isClientSide() || slot < 0 || slot >= controlRow + 9)
+                return;
+
+            ServerPlayer spl = (ServerPlayer) player;
+            ClickType type = InventoryMenuImpl.getActionType(button, clickType);
+            if (slot < controlRow) {
+                int index = scroll * 9 + slot;
+                if (index < length) {
+                    onClick(items, index, spl, type, scroll);
+                }
+                renderPending();
+                return;
+            }
+
+            int column = slot - controlRow;
+            int step = type == ClickType.SHIFT_LEFT || type == ClickType.SHIFT_RIGHT ? windowRows : 1;
+            if (column == 0 && scrollUp != null && scroll > 0) {
+                scrollTo(scroll - step);
+            } else if (column == 8 && scrollDown != null && scroll < maxScroll()) {
+                scrollTo(scroll + step);
+            } else {
+                onClick(controls, column, spl, type, scroll);
+            }
+            renderPending();
+        }
+
+        @Override
+        public void removed(Player player) {
+            // The menu may already have been swept if its player left without closing it
+            if (player == this.player && open.remove(this)) {
+                pending = null;
+                resolvedRows.clear();
+                scaffolding.release();
+                if (open.isEmpty()) {
+                    onLastViewerClosed();
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,258 @@
+package org.wallentines.invmenu.impl;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectAVLTreeMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectSortedMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An inverted index from search terms to the indices of the menu items they describe. Name tokens are matched by
+ * prefix, and tags are matched exactly. Queries only visit the postings of matching terms, so their cost depends on
+ * the number of matches rather than the number of indexed items. Postings refer to entries rather than indices, so
+ * moving items only changes the positions of the entries which move, and never touches the postings.
+ */
+public class SearchIndex {
+
+    private final NavigableMap<String, Set<Entry>> tokens = new TreeMap<>();
+    private final Map<String, Set<Entry>> tags = new HashMap<>();
+    private final Int2ObjectSortedMap<Entry> entries = new Int2ObjectAVLTreeMap<>();
+
+    /**
+     * Sets the terms of the item at the given index, replacing any previous terms.
+     * @param index The item index.
+     * @param text Text to split into name tokens.
+     * @param tags Tags to match exactly.
+     */
+    public void put(int index, String text, Collection<String> tags) {
+        remove(index);
+
+        String[] tokens = tokenize(text);
+        String[] normalizedTags = new String[tags.size()];
+        int i = 0;
+        for (String tag : tags) {
+            normalizedTags[i++] = tag.toLowerCase(Locale.ROOT);
+        }
+
+        Entry entry = new Entry(tokens, normalizedTags);
+        for (String token : tokens) {
+            this.tokens.computeIfAbsent(token, k -> new ReferenceOpenHashSet<>()).add(entry);
+        }
+        for (String tag : normalizedTags) {
+            this.tags.computeIfAbsent(tag, k -> new ReferenceOpenHashSet<>()).add(entry);
+        }
+        place(index, entry);
+    }
+
+    /**
+     * Removes the terms of the item at the given index.
+     * @param index The item index.
+     */
+    public void remove(int index) {
+        Entry old = entries.remove(index);
+        if (old == null)
+            return;
+
+        for (String token : old.tokens) {
+            removePosting(tokens, token, old);
+        }
+        for (String tag : old.tags) {
+            removePosting(tags, tag, old);
+        }
+    }
+
+    /**
+     * Removes the terms of all items.
+     */
+    public void clear() {
+        tokens.clear();
+        tags.clear();
+        entries.clear();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Finds the items matching every term in the given query. Terms starting with {@code #} match tags exactly, and
+     * other terms match the start of any name token. An empty query matches every indexed item.
+     * @param query The query.
+     * @return The indices of all matching items, in ascending order.
+     */
+    public IntList search(String query) {
+
+        List<Set<Entry>> required = new ArrayList<>();
+        for (String term : query.toLowerCase(Locale.ROOT).split("\\s+")) {
+            if (term.isEmpty())
+                continue;
+
+            Set<Entry> matches;
+            if (term.charAt(0) == '#') {
+                matches = tags.get(term.substring(1));
+            } else {
+                matches = prefixMatches(term);
+            }
+            if (matches == null || matches.isEmpty()) {
+                return new IntArrayList();
+            }
+            required.add(matches);
+        }
+
+        if (required.isEmpty()) {
+            return new IntArrayList(entries.keySet());
+        }
+
+        // Intersect starting from the smallest set, so the work is bounded by the rarest term.
+        required.sort((a, b) -> Integer.compare(a.size(), b.size()));
+        IntArrayList out = new IntArrayList();
+        outer:
+        for (Entry entry : required.get(0)) {
+            for (int i = 1; i < required.size(); i++) {
+                if (!required.get(i).contains(entry))
+                    continue outer;
+            }
+            out.add(entry.index);
+        }
+        IntArrays.quickSort(out.elements(), 0, out.size());
+        return out;
+    }
+
+    private Set<Entry> prefixMatches(String prefix) {
+        NavigableMap<String, Set<Entry>> range = tokens.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        if (range.size() == 1) {
+            return range.firstEntry().getValue();
+        }
+
+        Set<Entry> out = new ReferenceOpenHashSet<>();
+        for (Set<Entry> postings : range.values()) {
+            out.addAll(postings);
+        }
+        return out;
+    }
+
+    /**
+     * Moves the terms of the item at one index to another, replacing any terms already there.
+     * @param from The current item index.
+     * @param to The new item index.
+     */
+    public void move(int from, int to) {
+        if (from == to)
+            return;
+
+        Entry entry = entries.remove(from);
+        remove(to);
+        if (entry != null) {
+            place(to, entry);
+        }
+    }
+
+    /**
+     * Moves the terms of every item at or after the given index by the given amount. Used when items are inserted into
+     * or removed from the middle of a menu. Any terms moved onto an index below the start are replaced.
+     * @param start The first index to move.
+     * @param amount The amount to move each index by.
+     */
+    public void shift(int start, int amount) {
+        shift(start, Integer.MAX_VALUE, amount);
+    }
+
+    /**
+     * Moves the terms of every item in [start, end) by the given amount. Any terms moved onto an index outside of the
+     * range are replaced. Only the items in the range are visited.
+     * @param start The first index to move.
+     * @param end The index after the last index to move.
+     * @param amount The amount to move each index by.
+     */
+    public void shift(int start, int end, int amount) {
+        if (amount == 0 || start >= end)
+            return;
+
+        Int2ObjectSortedMap<Entry> range = entries.subMap(start, end);
+        if (range.isEmpty())
+            return;
+
+        Entry[] moved = range.values().toArray(new Entry[0]);
+        range.clear();
+        for (Entry entry : moved) {
+            int index = entry.index + amount;
+            remove(index);
+            place(index, entry);
+        }
+    }
+
+    /**
+     * Moves the terms of the item at one index to another, shifting the terms of the items between them by one index.
+     * @param from The current item index.
+     * @param to The new item index.
+     */
+    public void reorder(int from, int to) {
+        if (from == to)
+            return;
+
+        Entry entry = entries.remove(from);
+        if (from < to) {
+            shift(from + 1, to + 1, -1);
+        } else {
+            shift(to, from, 1);
+        }
+        if (entry != null) {
+            place(to, entry);
+        }
+    }
+
+    private void place(int index, Entry entry) {
+        entry.index = index;
+        entries.put(index, entry);
+    }
+
+    private static void removePosting(Map<String, Set<Entry>> map, String key, Entry entry) {
+        Set<Entry> postings = map.get(key);
+        if (postings == null)
+            return;
+
+        postings.remove(entry);
+        if (postings.isEmpty()) {
+            map.remove(key);
+        }
+    }
+
+    private static String[] tokenize(String text) {
+        if (text == null)
+            return new String[0];
+
+        List<String> out = new ArrayList<>();
+        for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}_]+")) {
+            if (!token.isEmpty()) out.add(token);
+        }
+        return out.toArray(String[]::new);
+    }
+
+    /**
+     * The terms of a single item. Postings hold entries rather than indices, so an entry keeps its postings when it is
+     * moved to another index.
+     */
+    private static final class Entry {
+
+        private final String[] tokens;
+        private final String[] tags;
+        private int index;
+
+        Entry(String[] tokens, String[] tags) {
+            this.tokens = tokens;
+            this.tags = tags;
+        }
+    }
+
+}
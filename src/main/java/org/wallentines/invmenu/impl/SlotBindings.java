@@ -0,0 +1,108 @@
+package org.wallentines.invmenu.impl;
+
+import org.wallentines.invmenu.api.ObservableValue;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Listens to the observable values which the slots of a menu are bound to, while the menu has viewers. Each value is
+ * listened to once no matter how many slots are bound to it. Should only be used from the server thread.
+ */
+final class SlotBindings {
+
+    private final Map<ObservableValue<?>, Binding> bindings = new IdentityHashMap<>();
+    private final Consumer<ObservableValue<?>> refresh;
+
+    /**
+     * @param refresh Some logic to refresh the slots bound to a value after it changes. Called on the server thread.
+     */
+    SlotBindings(Consumer<ObservableValue<?>> refresh) {
+        this.refresh = refresh;
+    }
+
+    /**
+     * Updates the listeners after a slot's source has changed. The slot store should already hold the new source.
+     * @param items The slots of the menu.
+     * @param previous The source the slot was bound to before, or null.
+     * @param source The source the slot is bound to now, or null.
+     * @param listening Whether the menu has viewers.
+     */
+    void rebind(SlotStore items, ObservableValue<?> previous, ObservableValue<?> source, boolean listening) {
+        if (previous != null && previous != source) {
+            unlistenUnused(items, previous);
+        }
+        if (source != null && listening) {
+            listen(source);
+        }
+    }
+
+    void listenAll(SlotStore items) {
+        for (int i = 0; i < items.size(); i++) {
+            ObservableValue<?> source = items.source(i);
+            if (source != null) {
+                listen(source);
+            }
+        }
+    }
+
+    void listen(ObservableValue<?> source) {
+        if (bindings.containsKey(source))
+            return;
+
+        Binding binding = new Binding(source);
+        bindings.put(source, binding);
+        source.addListener(binding);
+    }
+
+    /**
+     * Stops listening to the given value if no slot is bound to it anymore.
+     */
+    void unlistenUnused(SlotStore items, ObservableValue<?> source) {
+        for (int i = 0; i < items.size(); i++) {
+            if (items.source(i) == source)
+                return;
+        }
+
+        Binding binding = bindings.remove(source);
+        if (binding != null) {
+            source.removeListener(binding);
+        }
+    }
+
+    void unlistenAll() {
+        for (Binding binding : bindings.values()) {
+            binding.source.removeListener(binding);
+        }
+        bindings.clear();
+    }
+
+    /**
+     * Listens to an observable value on behalf of a menu. Changes are coalesced, so any number of changes within a
+     * tick cause at most one refresh of the bound slots on the server thread.
+     */
+    private class Binding implements Runnable {
+
+        private final ObservableValue<?> source;
+        private final AtomicBoolean pending = new AtomicBoolean();
+
+        Binding(ObservableValue<?> source) {
+            this.source = source;
+        }
+
+        @Override
+        public void run() {
+            if (pending.compareAndSet(false, true)) {
+                MenuTicker.submit(() -> {
+                    pending.set(false);
+                    if (bindings.get(source) == this) {
+                        refresh.accept(source);
+                    }
+                });
+            }
+        }
+    }
+
+}
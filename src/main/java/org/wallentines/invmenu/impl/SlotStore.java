@@ -0,0 +1,243 @@
+package org.wallentines.invmenu.impl;
+
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.item.ItemStack;
+import org.wallentines.invmenu.api.InventoryMenu;
+import org.wallentines.invmenu.api.ObservableValue;
+import org.wallentines.invmenu.api.PagedInventoryMenu;
+import org.wallentines.pseudonym.PipelineContext;
+
+import java.util.Arrays;
+
+/**
+ * Stores the contents of a menu as parallel arrays, rather than as one object per slot. Static items are stored
+ * directly, and page-aware click events receive their page when they are dispatched, so no wrapper objects need to be
+ * allocated when a slot is set. Stores can be shared copy-on-write, so the arrays are only duplicated when a store
+ * which shares them is changed.
+ */
+public final class SlotStore {
+
+    private ItemStack[] stacks;
+    private InventoryMenu.ItemSupplier[] suppliers;
+    private InventoryMenu.ClickEvent[] events;
+    private PagedInventoryMenu.PagedClickEvent[] pagedEvents;
+    private int[] refreshIntervals;
+    private ObservableValue<?>[] sources;
+    private Share share;
+
+    public SlotStore(int size) {
+        this.stacks = new ItemStack[size];
+        this.suppliers = new InventoryMenu.ItemSupplier[size];
+        this.events = new InventoryMenu.ClickEvent[size];
+        this.pagedEvents = new PagedInventoryMenu.PagedClickEvent[size];
+        this.refreshIntervals = new int[size];
+        this.sources = new ObservableValue<?>[size];
+    }
+
+    private SlotStore(SlotStore other) {
+        this.stacks = other.stacks;
+        this.suppliers = other.suppliers;
+        this.events = other.events;
+        this.pagedEvents = other.pagedEvents;
+        this.refreshIntervals = other.refreshIntervals;
+        this.sources = other.sources;
+        this.share = other.share;
+    }
+
+    /**
+     * Creates a copy of this store which shares its arrays until either store is changed.
+     * @return A new store with the same contents.
+     */
+    public SlotStore share() {
+        if (share == null) {
+            share = new Share();
+        }
+        share.owners++;
+        return new SlotStore(this);
+    }
+
+    public int size() {
+        return stacks.length;
+    }
+
+    public boolean isEmpty(int index) {
+        return stacks[index] == null && suppliers[index] == null;
+    }
+
+    public void set(int index, ItemStack item, InventoryMenu.ClickEvent event) {
+        put(index, item, null, event, null);
+    }
+
+    public void set(int index, InventoryMenu.ItemSupplier item, InventoryMenu.ClickEvent event) {
+        put(index, null, item, event, null);
+        sources[index] = item == null ? null : item.source();
+    }
+
+    public void set(int index, ItemStack item, PagedInventoryMenu.PagedClickEvent event) {
+        put(index, item, null, null, event);
+    }
+
+    public void set(int index, InventoryMenu.ItemSupplier item, PagedInventoryMenu.PagedClickEvent event) {
+        put(index, null, item, null, event);
+        sources[index] = item == null ? null : item.source();
+    }
+
+    public void clear(int index) {
+        put(index, null, null, null, null);
+        refreshIntervals[index] = 0;
+        sources[index] = null;
+    }
+
+    public void clear(int start, int end) {
+        mutate();
+        Arrays.fill(stacks, start, end, null);
+        Arrays.fill(suppliers, start, end, null);
+        Arrays.fill(events, start, end, null);
+        Arrays.fill(pagedEvents, start, end, null);
+        Arrays.fill(refreshIntervals, start, end, 0);
+        Arrays.fill(sources, start, end, null);
+    }
+
+    /**
+     * Gets the number of ticks between refreshes of the item at the given index.
+     * @param index The slot index.
+     * @return The refresh interval, or 0 if the slot is not refreshed periodically.
+     */
+    public int refreshInterval(int index) {
+        return refreshIntervals[index];
+    }
+
+    public void setRefreshInterval(int index, int interval) {
+        mutate();
+        refreshIntervals[index] = Math.max(0, interval);
+    }
+
+    /**
+     * Gets the observable value the item at the given index is bound to.
+     * @param index The slot index.
+     * @return The bound value, or null if the slot is not bound.
+     */
+    public ObservableValue<?> source(int index) {
+        return sources[index];
+    }
+
+    public void setSource(int index, ObservableValue<?> source) {
+        mutate();
+        sources[index] = source;
+    }
+
+    /**
+     * Resolves the item at the given index for the given context.
+     * @param index The slot index.
+     * @param ctx The context to resolve the item with.
+     * @return The resolved item, or null if the slot is empty.
+     */
+    public ItemStack resolve(int index, PipelineContext ctx) {
+        ItemStack is = stacks[index];
+        if (is != null)
+            return is;
+
+        InventoryMenu.ItemSupplier supplier = suppliers[index];
+        return supplier == null ? null : supplier.get(ctx);
+    }
+
+    /**
+     * Gets the plain item at the given index.
+     * @param index The slot index.
+     * @return The item, or null if the slot is empty or holds an item supplier.
+     */
+    public ItemStack stack(int index) {
+        return stacks[index];
+    }
+
+    /**
+     * Determines whether the item at the given index needs to be resolved for each player.
+     * @param index The slot index.
+     * @return Whether the slot holds an item supplier.
+     */
+    public boolean isDynamic(int index) {
+        return suppliers[index] != null;
+    }
+
+    /**
+     * Determines whether the item at the given index can be resolved off of the server thread.
+     * @param index The slot index.
+     * @return Whether the slot holds a thread-safe item supplier.
+     */
+    public boolean isThreadSafe(int index) {
+        InventoryMenu.ItemSupplier supplier = suppliers[index];
+        return supplier != null && supplier.isThreadSafe();
+    }
+
+    /**
+     * Runs the click event at the given index, if there is one.
+     * @param index The slot index.
+     * @param player The player who clicked.
+     * @param type The type of click.
+     * @param page The page the slot is on.
+     * @return Whether there was a click event at the index.
+     */
+    public boolean click(int index, ServerPlayer player, InventoryMenu.ClickType type, int page) {
+        InventoryMenu.ClickEvent event = events[index];
+        if (event != null) {
+            event.execute(player, type);
+            return true;
+        }
+
+        PagedInventoryMenu.PagedClickEvent pagedEvent = pagedEvents[index];
+        if (pagedEvent != null) {
+            pagedEvent.execute(player, type, page);
+            return true;
+        }
+        return false;
+    }
+
+    private void put(int index, ItemStack item, InventoryMenu.ItemSupplier supplier, InventoryMenu.ClickEvent event, PagedInventoryMenu.PagedClickEvent pagedEvent) {
+        mutate();
+        stacks[index] = item;
+        suppliers[index] = supplier;
+        events[index] = event;
+        pagedEvents[index] = pagedEvent;
+    }
+
+    /**
+     * Copies a range of slots from one store to another.
+     * @see System#arraycopy(Object, int, Object, int, int)
+     */
+    public static void copy(SlotStore src, int srcPos, SlotStore dst, int dstPos, int length) {
+        dst.mutate();
+        System.arraycopy(src.stacks, srcPos, dst.stacks, dstPos, length);
+        System.arraycopy(src.suppliers, srcPos, dst.suppliers, dstPos, length);
+        System.arraycopy(src.events, srcPos, dst.events, dstPos, length);
+        System.arraycopy(src.pagedEvents, srcPos, dst.pagedEvents, dstPos, length);
+        System.arraycopy(src.refreshIntervals, srcPos, dst.refreshIntervals, dstPos, length);
+        System.arraycopy(src.sources, srcPos, dst.sources, dstPos, length);
+    }
+
+    /**
+     * Takes exclusive ownership of the arrays before they are changed, duplicating them if they are still shared.
+     */
+    private void mutate() {
+        if (share == null)
+            return;
+
+        if (share.owners > 1) {
+            share.owners--;
+            stacks = stacks.clone();
+            suppliers = suppliers.clone();
+            events = events.clone();
+            pagedEvents = pagedEvents.clone();
+            refreshIntervals = refreshIntervals.clone();
+            sources = sources.clone();
+        }
+        share = null;
+    }
+
+    /**
+     * Counts the stores sharing a set of arrays.
+     */
+    private static final class Share {
+        int owners = 1;
+    }
+
+}
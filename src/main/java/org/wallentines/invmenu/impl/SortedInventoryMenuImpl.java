@@ -0,0 +1,137 @@
+package org.wallentines.invmenu.impl;
+
+import net.minecraft.network.chat.Component;
+import net.minecraft.world.item.ItemStack;
+import org.wallentines.invmenu.api.InventoryMenu;
+import org.wallentines.invmenu.api.PagedInventoryMenu;
+import org.wallentines.invmenu.api.SortedInventoryMenu;
+import org.wallentines.pseudonym.Message;
+import org.wallentines.pseudonym.PipelineContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+public class SortedInventoryMenuImpl<K> implements SortedInventoryMenu<K> {
+
+    private final PagedInventoryMenuImpl menu;
+    private final Comparator<EntryImpl<K>> order;
+    private final List<EntryImpl<K>> entries = new ArrayList<>();
+    private long nextSequence;
+
+    protected SortedInventoryMenuImpl(PagedInventoryMenuImpl menu, Comparator<? super K> comparator) {
+        this.menu = menu;
+        this.order = Comparator.<EntryImpl<K>, K>comparing(ent -> ent.key, comparator).thenComparingLong(ent -> ent.sequence);
+    }
+
+    @Override
+    public Entry<K> add(K key, ItemStack itemStack, PagedInventoryMenu.PagedClickEvent event) {
+        EntryImpl<K> ent = new EntryImpl<>(this, key, nextSequence++);
+        menu.setItem(insert(ent), itemStack, event);
+        menu.updateDirty();
+        return ent;
+    }
+
+    @Override
+    public Entry<K> add(K key, InventoryMenu.ItemSupplier itemStack, PagedInventoryMenu.PagedClickEvent event) {
+        EntryImpl<K> ent = new EntryImpl<>(this, key, nextSequence++);
+        menu.setItem(insert(ent), itemStack, event);
+        menu.updateDirty();
+        return ent;
+    }
+
+    @Override
+    public void remove(Entry<K> entry) {
+        if (!(entry instanceof EntryImpl<K> ent) || ent.owner != this)
+            return;
+
+        int index = position(ent);
+        entries.remove(index);
+        ent.owner = null;
+
+        menu.shiftBackward(index, entries.size());
+        menu.shrinkToFit();
+        menu.updateDirty();
+    }
+
+    @Override
+    public void rekey(Entry<K> entry, K key) {
+        if (!(entry instanceof EntryImpl<K> ent) || ent.owner != this)
+            return;
+
+        int from = position(ent);
+        entries.remove(from);
+        ent.key = key;
+        int to = position(ent);
+        entries.add(to, ent);
+
+        menu.moveItem(from, to);
+        menu.updateDirty();
+    }
+
+    @Override
+    public void clear() {
+        for (EntryImpl<K> ent : entries) {
+            ent.owner = null;
+        }
+        entries.clear();
+        menu.clear();
+    }
+
+    @Override
+    public int count() {
+        return entries.size();
+    }
+
+    @Override
+    public PagedInventoryMenu menu() {
+        return menu;
+    }
+
+    private int insert(EntryImpl<K> ent) {
+
+        int index = position(ent);
+        int count = entries.size();
+        entries.add(index, ent);
+
+        // Make room for one more item, then open a gap at the new index.
+        menu.resize(count);
+        menu.shiftForward(index, count);
+
+        return index;
+    }
+
+    private int position(EntryImpl<K> ent) {
+        int index = Collections.binarySearch(entries, ent, order);
+        return index < 0 ? -(index + 1) : index;
+    }
+
+    public static <K> SortedInventoryMenu<K> create(Message<Component> title, PagedInventoryMenu.SizeProvider sizeProvider, Comparator<? super K> comparator, PipelineContext ctx) {
+        return new SortedInventoryMenuImpl<>((PagedInventoryMenuImpl) PagedInventoryMenuImpl.create(title, sizeProvider, 0, ctx), comparator);
+    }
+
+    private static class EntryImpl<K> implements Entry<K> {
+
+        private SortedInventoryMenuImpl<K> owner;
+        private K key;
+        private final long sequence;
+
+        EntryImpl(SortedInventoryMenuImpl<K> owner, K key, long sequence) {
+            this.owner = owner;
+            this.key = key;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public K key() {
+            return key;
+        }
+
+        @Override
+        public int index() {
+            return owner == null ? -1 : owner.position(this);
+        }
+    }
+
+}
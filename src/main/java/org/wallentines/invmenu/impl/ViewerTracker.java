@@ -0,0 +1,95 @@
+package org.wallentines.invmenu.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of every menu which has viewers, and periodically removes viewers which can no longer see a menu. A
+ * viewer is stale once its player has been removed or disconnected, or has opened some other container without the
+ * menu being notified. Should only be used from the server thread, except for {@link #leakedViewers()}.
+ */
+public final class ViewerTracker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ViewerTracker.class);
+
+    private static final int SWEEP_INTERVAL = 20;
+
+    private static final Set<Tracked> ACTIVE = Collections.newSetFromMap(new IdentityHashMap<>());
+    private static final AtomicLong LEAKED = new AtomicLong();
+    private static int ticks;
+
+    private ViewerTracker() { }
+
+    /**
+     * Gets the total number of stale viewers which have been swept from menus since the server started.
+     * @return The number of leaked viewers.
+     * @see org.wallentines.invmenu.api.MenuDiagnostics#leakedViewers()
+     */
+    public static long leakedViewers() {
+        return LEAKED.get();
+    }
+
+    static void track(Tracked menu) {
+        ACTIVE.add(menu);
+    }
+
+    static void untrack(Tracked menu) {
+        ACTIVE.remove(menu);
+    }
+
+    static void tick() {
+        if (++ticks < SWEEP_INTERVAL)
+            return;
+        ticks = 0;
+        sweep();
+    }
+
+    /**
+     * Removes stale viewers from every tracked menu immediately.
+     */
+    static void sweep() {
+        if (ACTIVE.isEmpty())
+            return;
+
+        // Menus are untracked while being swept if they lose their last viewer
+        List<Tracked> menus = new ArrayList<>(ACTIVE);
+        int swept = 0;
+        for (Tracked menu : menus) {
+            try {
+                swept += menu.sweepViewers();
+            } catch (Throwable th) {
+                LOGGER.error("Error while sweeping menu viewers", th);
+            }
+        }
+
+        if (swept > 0) {
+            long total = LEAKED.addAndGet(swept);
+            LOGGER.debug("Swept {} stale menu viewers ({} total)", swept, total);
+        }
+    }
+
+    static void clear() {
+        ACTIVE.clear();
+        ticks = 0;
+    }
+
+    /**
+     * A menu whose viewers can be swept.
+     */
+    interface Tracked {
+
+        /**
+         * Removes viewers whose players have left or no longer have the menu open, without closing anything for them.
+         * @return The number of viewers removed.
+         */
+        int sweepViewers();
+    }
+
+}
@@ -0,0 +1,116 @@
+package org.wallentines.invmenu.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SearchIndexTest {
+
+    private static SearchIndex create() {
+        SearchIndex index = new SearchIndex();
+        index.put(0, "Diamond Sword", List.of("weapon"));
+        index.put(1, "Iron Sword", List.of("weapon"));
+        index.put(2, "Diamond Pickaxe", List.of("tool"));
+        index.put(3, "Bread", List.of("food"));
+        return index;
+    }
+
+    @Test
+    public void testSearch() {
+        SearchIndex index = create();
+
+        assertEquals(List.of(0, 1), index.search("sword"));
+        assertEquals(List.of(0, 2), index.search("DIA"));
+        assertEquals(List.of(0), index.search("dia #weapon"));
+        assertEquals(List.of(3), index.search("#food"));
+        assertEquals(List.of(0, 1, 2, 3), index.search(""));
+        assertTrue(index.search("gold").isEmpty());
+        assertTrue(index.search("#sword").isEmpty());
+    }
+
+    @Test
+    public void testPutReplaces() {
+        SearchIndex index = create();
+        index.put(1, "Golden Apple", List.of("food"));
+
+        assertEquals(List.of(0), index.search("sword"));
+        assertEquals(List.of(1, 3), index.search("#food"));
+    }
+
+    @Test
+    public void testRemove() {
+        SearchIndex index = create();
+        index.remove(0);
+        index.remove(7);
+
+        assertEquals(List.of(1), index.search("sword"));
+        assertEquals(List.of(2), index.search("diamond"));
+
+        index.clear();
+        assertTrue(index.isEmpty());
+        assertTrue(index.search("").isEmpty());
+    }
+
+    @Test
+    public void testShiftForward() {
+        SearchIndex index = create();
+        index.shift(1, 3, 1);
+
+        assertEquals(List.of(0, 2), index.search("sword"));
+        assertEquals(List.of(0, 3), index.search("diamond"));
+        // Bread was replaced by the pickaxe
+        assertTrue(index.search("bread").isEmpty());
+    }
+
+    @Test
+    public void testShiftBackward() {
+        SearchIndex index = create();
+        index.remove(1);
+        index.shift(2, -1);
+
+        assertEquals(List.of(0, 1), index.search("diamond"));
+        assertEquals(List.of(2), index.search("bread"));
+        assertEquals(List.of(0, 1, 2), index.search(""));
+    }
+
+    @Test
+    public void testShiftOutsideRange() {
+        SearchIndex index = create();
+        index.shift(10, 20, 5);
+        index.shift(0, 0, 1);
+
+        assertEquals(List.of(0, 1, 2, 3), index.search(""));
+        assertEquals(List.of(0, 1), index.search("sword"));
+    }
+
+    @Test
+    public void testMove() {
+        SearchIndex index = create();
+        index.move(3, 1);
+
+        assertEquals(List.of(1), index.search("bread"));
+        assertEquals(List.of(0), index.search("sword"));
+        assertEquals(List.of(0, 1, 2), index.search(""));
+
+        index.move(2, 2);
+        assertEquals(List.of(2), index.search("pickaxe"));
+    }
+
+    @Test
+    public void testReorder() {
+        SearchIndex index = create();
+        index.reorder(0, 3);
+
+        assertEquals(List.of(2), index.search("bread"));
+        assertEquals(List.of(0, 3), index.search("sword"));
+        assertEquals(List.of(1, 3), index.search("diamond"));
+
+        index.reorder(3, 0);
+        assertEquals(List.of(0, 1), index.search("sword"));
+        assertEquals(List.of(3), index.search("bread"));
+    }
+
+}
@@ -1,5 +1,6 @@
 package org.wallentines.invmenu.test;
 
+import com.mojang.authlib.GameProfile;
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import net.minecraft.ChatFormatting;
@@ -18,7 +19,9 @@ import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.item.Items;
 import net.minecraft.world.item.component.ResolvableProfile;
 import org.wallentines.invmenu.api.InventoryMenu;
+import org.wallentines.invmenu.api.MenuTemplate;
 import org.wallentines.invmenu.api.PagedInventoryMenu;
+import org.wallentines.invmenu.api.PlayerHeads;
 import org.wallentines.pseudonym.Message;
 import org.wallentines.pseudonym.MessagePipeline;
 import org.wallentines.pseudonym.PartialMessage;
@@ -97,4 +100,42 @@ public class Functions {
 
     }
 
+    public static void testTemplate(CommandSourceStack css,
+                                    CompoundTag tag,
+                                    Identifier id,
+                                    CommandDispatcher<CommandSourceStack> dispatcher,
+                                    ExecutionContext<CommandSourceStack> exeContext,
+                                    Frame frame,
+                                    Void data) throws CommandSyntaxException {
+
+        MenuTemplate template = MenuTemplate.get(Identifier.fromNamespaceAndPath("invmenu", "example")).orElseThrow();
+        template.open(css.getPlayerOrException());
+
+    }
+
+    public static void testHeads(CommandSourceStack css,
+                                 CompoundTag tag,
+                                 Identifier id,
+                                 CommandDispatcher<CommandSourceStack> dispatcher,
+                                 ExecutionContext<CommandSourceStack> exeContext,
+                                 Frame frame,
+                                 Void data) throws CommandSyntaxException {
+
+        ServerPlayer player = css.getPlayerOrException();
+
+        // Resolve profiles locally, so the test works without network access
+        PlayerHeads.setResolver(PlayerHeads.Resolver.local(uuid -> {
+            ServerPlayer online = css.getServer().getPlayerList().getPlayer(uuid);
+            return online == null ? null : online.getGameProfile();
+        }));
+
+        InventoryMenu menu = InventoryMenu.create(Message.complete(Component.literal("Heads")), 9);
+        menu.setItem(0, PlayerHeads.viewer(), null);
+        menu.setItem(1, PlayerHeads.of(player.getUUID()), null);
+        menu.setItem(2, PlayerHeads.of(new GameProfile(player.getUUID(), player.getGameProfile().name())), null);
+
+        menu.open(player);
+
+    }
+
 }